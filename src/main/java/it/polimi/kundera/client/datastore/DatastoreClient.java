@@ -4,36 +4,52 @@ import com.google.appengine.api.datastore.*;
 import com.google.appengine.tools.remoteapi.RemoteApiInstaller;
 import com.google.appengine.tools.remoteapi.RemoteApiOptions;
 import com.impetus.kundera.KunderaException;
+import com.impetus.kundera.PersistenceProperties;
 import com.impetus.kundera.client.Client;
 import com.impetus.kundera.client.ClientBase;
 import com.impetus.kundera.client.EnhanceEntity;
 import com.impetus.kundera.db.RelationHolder;
 import com.impetus.kundera.generator.AutoGenerator;
+import com.impetus.kundera.graph.Node;
 import com.impetus.kundera.index.IndexManager;
+import com.impetus.kundera.lifecycle.states.RemovedState;
 import com.impetus.kundera.loader.ClientLoaderException;
 import com.impetus.kundera.metadata.KunderaMetadataManager;
 import com.impetus.kundera.metadata.model.ClientMetadata;
 import com.impetus.kundera.metadata.model.EntityMetadata;
-import com.impetus.kundera.metadata.model.MetamodelImpl;
+import com.impetus.kundera.metadata.model.PersistenceUnitMetadata;
 import com.impetus.kundera.metadata.model.Relation;
-import com.impetus.kundera.metadata.model.attributes.AbstractAttribute;
-import com.impetus.kundera.metadata.model.type.AbstractManagedType;
 import com.impetus.kundera.persistence.EntityManagerFactoryImpl.KunderaMetadata;
 import com.impetus.kundera.persistence.EntityReader;
+import com.impetus.kundera.persistence.api.Batcher;
 import com.impetus.kundera.persistence.context.jointable.JoinTableData;
 import com.impetus.kundera.property.PropertyAccessorHelper;
-import com.impetus.kundera.property.accessor.EnumAccessor;
+import it.polimi.kundera.client.datastore.cache.EntityCache;
+import it.polimi.kundera.client.datastore.cache.SessionCache;
+import it.polimi.kundera.client.datastore.config.DatastoreClientConfig;
+import it.polimi.kundera.client.datastore.config.DatastoreClientConfig.JoinTableKeys;
+import it.polimi.kundera.client.datastore.config.DatastoreConstants;
+import it.polimi.kundera.client.datastore.mapping.AttributeMapping;
+import it.polimi.kundera.client.datastore.mapping.CollectionConverter;
+import it.polimi.kundera.client.datastore.mapping.EntityMapping;
+import it.polimi.kundera.client.datastore.mapping.MappingRegistry;
+import it.polimi.kundera.client.datastore.query.CursorCache;
 import it.polimi.kundera.client.datastore.query.DatastoreQuery;
+import it.polimi.kundera.client.datastore.query.FanOutQuery;
 import it.polimi.kundera.client.datastore.query.QueryBuilder;
+import it.polimi.kundera.client.datastore.query.QueryPlanCache;
+import it.polimi.kundera.client.datastore.query.QueryResultCache;
+import it.polimi.kundera.client.datastore.serializer.BlobCodec;
+import it.polimi.kundera.client.datastore.serializer.ChunkedBlob;
+import it.polimi.kundera.client.datastore.serializer.LazyValue;
+import it.polimi.kundera.client.datastore.serializer.LazyValues;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.persistence.metamodel.Attribute;
-import javax.persistence.metamodel.EmbeddableType;
-import javax.persistence.metamodel.EntityType;
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * The gateway to CRUD operations on database, except for queries.
@@ -43,22 +59,56 @@ import java.util.*;
  * @see com.impetus.kundera.client.Client
  * @see it.polimi.kundera.client.datastore.query.DatastoreQuery
  * @see com.impetus.kundera.generator.AutoGenerator
+ * @see com.impetus.kundera.persistence.api.Batcher
  */
-public class DatastoreClient extends ClientBase implements Client<DatastoreQuery>, AutoGenerator {
+public class DatastoreClient extends ClientBase implements Client<DatastoreQuery>, AutoGenerator, Batcher {
 
     private EntityReader reader;
     private RemoteApiInstaller installer;
     private DatastoreService datastore;
+    private AsyncDatastoreService asyncDatastore;
+    private DatastoreClientConfig clientConfig;
+    private CursorCache cursorCache;
+    private QueryResultCache queryResultCache;
+    private QueryPlanCache queryPlans;
+    private FanOutQuery fanOut;
+    private MappingRegistry mappings;
+    private BlobCodec codec;
+    private IdAllocator idAllocator;
+    private EntityCache entityCache;
+    private SessionCache sessionCache;
+    private List<Node> nodes = new ArrayList<>();
+    private List<Future<?>> pendingWrites = new ArrayList<>();
+    private Set<Key> pendingKeys = new HashSet<>();
+    private int batchSize;
     private static final Logger logger = LoggerFactory.getLogger(DatastoreClient.class);
 
     protected DatastoreClient(final KunderaMetadata kunderaMetadata, Map<String, Object> properties,
                               String persistenceUnit, final ClientMetadata clientMetadata, IndexManager indexManager,
-                              EntityReader reader, final DatastoreService datastore, RemoteApiOptions options) {
+                              EntityReader reader, final DatastoreService datastore, final AsyncDatastoreService asyncDatastore,
+                              RemoteApiOptions options, DatastoreClientConfig clientConfig, CursorCache cursorCache,
+                              MappingRegistry mappings, BlobCodec codec, IdAllocator idAllocator,
+                              EntityCache entityCache, QueryResultCache queryResultCache,
+                              QueryPlanCache queryPlans, FanOutQuery fanOut) {
         super(kunderaMetadata, properties, persistenceUnit);
         this.reader = reader;
         this.datastore = datastore;
+        this.asyncDatastore = asyncDatastore;
+        this.clientConfig = clientConfig;
+        this.cursorCache = cursorCache;
+        this.mappings = mappings;
+        this.codec = codec;
+        this.idAllocator = idAllocator;
+        this.entityCache = entityCache;
+        this.queryResultCache = queryResultCache;
+        this.queryPlans = queryPlans;
+        this.fanOut = fanOut;
+        if (clientConfig.isSessionCache()) {
+            this.sessionCache = new SessionCache();
+        }
         this.indexManager = indexManager;
         this.clientMetadata = clientMetadata;
+        setBatchSize(persistenceUnit, properties);
         if (options != null) {
             try {
                 this.installer = new RemoteApiInstaller();
@@ -70,18 +120,53 @@ public class DatastoreClient extends ClientBase implements Client<DatastoreQuery
         }
     }
 
+    private void setBatchSize(String persistenceUnit, Map<String, Object> puProperties) {
+        String batchSizeProperty = puProperties != null ? (String) puProperties.get(PersistenceProperties.KUNDERA_BATCH_SIZE) : null;
+        if (batchSizeProperty != null) {
+            try {
+                this.batchSize = Integer.parseInt(batchSizeProperty);
+            } catch (NumberFormatException e) {
+                throw new ClientLoaderException("Invalid batch size " + batchSizeProperty + ": ", e);
+            }
+        } else {
+            PersistenceUnitMetadata puMetadata = KunderaMetadataManager.getPersistenceUnitMetadata(kunderaMetadata, persistenceUnit);
+            this.batchSize = puMetadata != null ? puMetadata.getBatchSize() : 0;
+        }
+        if (this.batchSize <= 0 && clientConfig.isAsync()) {
+            /* async writes are joined by executeBatch, i.e. when the entity manager flushes */
+            this.batchSize = DatastoreConstants.MAX_PUT_ENTITIES;
+        }
+        if (this.batchSize > 0) {
+            logger.info("Batch writes enabled with batch size [" + this.batchSize + "]");
+        }
+    }
+
     @Override
     public void close() {
         this.indexManager.flush();
+        clear();
+        joinPendingWrites();
+        if (this.sessionCache != null) {
+            this.sessionCache.clear();
+        }
         this.reader = null;
         if (this.installer != null) {
             logger.debug("Uninstall remote API connection");
             this.installer.uninstall();
         }
         this.datastore = null;
+        this.asyncDatastore = null;
         externalProperties = null;
     }
 
+    public DatastoreClientConfig getClientConfig() {
+        return clientConfig;
+    }
+
+    public QueryPlanCache getQueryPlans() {
+        return queryPlans;
+    }
+
     @Override
     public EntityReader getReader() {
         return reader;
@@ -94,6 +179,13 @@ public class DatastoreClient extends ClientBase implements Client<DatastoreQuery
 
     @Override
     public Object generate() {
+        if (idAllocator != null) {
+            /*
+             * the kind of the entity is not available here, so the id comes from
+             * the shared sequence and is a string since it is stored as key name.
+             */
+            return String.valueOf(idAllocator.nextId(IdAllocator.SEQUENCE_KIND));
+        }
         /*
          * use random UUID instead of datastore generated
          * since here is not available the class of the entity to be persisted.
@@ -101,6 +193,28 @@ public class DatastoreClient extends ClientBase implements Client<DatastoreQuery
         return UUID.randomUUID().toString();
     }
 
+    /**
+     * Allocate an id in the kind of the given entity class, to be set on
+     * a new entity before persisting it.
+     * <p/>
+     * Ids are reserved in ranges of {@code datastore.id.allocation.range}
+     * if set, one at a time otherwise.
+     *
+     * @param entityClass class of the entity.
+     *
+     * @return a {@link Long} if the id attribute is numeric, its {@link String} representation otherwise.
+     */
+    public Object allocateId(Class<?> entityClass) {
+        EntityMetadata entityMetadata = KunderaMetadataManager.getEntityMetadata(kunderaMetadata, entityClass);
+        String kind = entityMetadata.getTableName();
+        long id = idAllocator != null ? idAllocator.nextId(kind) : datastore.allocateIds(kind, 1).getStart().getId();
+        Class<?> idClazz = entityMetadata.getIdAttribute().getJavaType();
+        if (idClazz.equals(Long.class) || idClazz.equals(long.class)) {
+            return id;
+        }
+        return String.valueOf(id);
+    }
+
     /*---------------------------------------------------------------------------------*/
     /*----------------------------- PERSIST OPERATIONS --------------------------------*/
     /*---------------------------------------------------------------------------------*/
@@ -109,70 +223,86 @@ public class DatastoreClient extends ClientBase implements Client<DatastoreQuery
     protected void onPersist(EntityMetadata entityMetadata, Object entity, Object id, List<RelationHolder> rlHolders) {
         logger.debug("entityMetadata = [" + entityMetadata + "], entity = [" + entity + "], id = [" + id + "], rlHolders = [" + rlHolders + "]");
 
-        MetamodelImpl metamodel = KunderaMetadataManager.getMetamodel(kunderaMetadata, entityMetadata.getPersistenceUnit());
-        EntityType entityType = metamodel.entity(entityMetadata.getEntityClazz());
+        Entity gaeEntity = createEntity(entityMetadata, entity, id, rlHolders);
+        put(Collections.singletonList(gaeEntity));
+        joinPendingWrites();
+        logger.info(gaeEntity.toString());
+    }
+
+    private Entity createEntity(EntityMetadata entityMetadata, Object entity, Object id, List<RelationHolder> rlHolders) {
+        EntityMapping mapping = mappings.getMapping(entityMetadata.getEntityClazz());
 
         Entity gaeEntity = DatastoreUtils.createDatastoreEntity(entityMetadata, id);
 
-        handleAttributes(gaeEntity, entity, metamodel, entityMetadata, entityType.getAttributes());
+        handleAttributes(gaeEntity, entity, mapping);
         handleRelations(gaeEntity, entityMetadata, rlHolders);
         /* discriminator column is used for JPA inheritance */
-        handleDiscriminatorColumn(gaeEntity, entityType);
-
-        datastore.put(gaeEntity);
-        logger.info(gaeEntity.toString());
+        handleDiscriminatorColumn(gaeEntity, mapping);
+        return gaeEntity;
     }
 
-    private void handleAttributes(Entity gaeEntity, Object entity, MetamodelImpl metamodel, EntityMetadata entityMetadata, Set<Attribute> attributes) {
-        String idAttribute = ((AbstractAttribute) entityMetadata.getIdAttribute()).getJPAColumnName();
-        for (Attribute attribute : attributes) {
-            // By pass ID attribute, is redundant since is also stored within the Key.
-            // By pass associations (i.e. relations) that are handled in handleRelations()
-            if (!attribute.isAssociation() && !((AbstractAttribute) attribute).getJPAColumnName().equals(idAttribute)) {
-                if (metamodel.isEmbeddable(((AbstractAttribute) attribute).getBindableJavaType())) {
-                    processEmbeddableAttribute(gaeEntity, entity, attribute, metamodel);
-                } else {
+    private void handleAttributes(Entity gaeEntity, Object entity, EntityMapping mapping) {
+        // ID attribute is not in mapping, is redundant since is also stored within the Key.
+        for (AttributeMapping attribute : mapping.getAttributes()) {
+            switch (attribute.getType()) {
+                case RELATION:
+                    // By pass associations (i.e. relations) that are handled in handleRelations()
+                    break;
+                case EMBEDDED:
+                    processEmbeddableAttribute(gaeEntity, entity, attribute);
+                    break;
+                default:
                     processAttribute(gaeEntity, entity, attribute);
-                }
             }
         }
     }
 
-    private void processAttribute(PropertyContainer gaeEntity, Object entity, Attribute attribute) {
-        Field field = (Field) attribute.getJavaMember();
-        Object valueObj = PropertyAccessorHelper.getObject(entity, field);
-        String jpaColumnName = ((AbstractAttribute) attribute).getJPAColumnName();
+    private void processAttribute(PropertyContainer gaeEntity, Object entity, AttributeMapping attribute) {
+        Object valueObj = attribute.getValue(entity);
+        String jpaColumnName = attribute.getColumnName();
 
-        if (valueObj instanceof Collection<?> || valueObj instanceof Map<?, ?>) {
-            try {
-                logger.debug("field = [" + field.getName() + "], objectType = [" + valueObj.getClass().getName() + "]");
-                valueObj = DatastoreUtils.serialize(valueObj);
-            } catch (IOException e) {
-                throw new KunderaException("Some errors occurred while serializing the object: ", e);
+        if (valueObj instanceof LazyValue && !((LazyValue) valueObj).isLoaded()) {
+            /* never accessed, written back as it was read */
+            valueObj = ((LazyValue) valueObj).getBlob();
+        } else if (valueObj != null && attribute.getType() == AttributeMapping.Type.COLLECTION) {
+            if (valueObj instanceof LazyValue) {
+                valueObj = ((LazyValue) valueObj).getValue();
             }
-        } else if (((Field) attribute.getJavaMember()).getType().isEnum()) {
-            valueObj = valueObj.toString();
+            logger.debug("field = [" + attribute.getField().getName() + "], objectType = [" + valueObj.getClass().getName() + "]");
+            Object nativeValue = clientConfig.isNativeCollections() ? CollectionConverter.toDatastore(valueObj) : null;
+            valueObj = nativeValue != null ? nativeValue : serialize(valueObj);
+        } else {
+            valueObj = attribute.toDatastore(valueObj);
         }
 
         if (valueObj != null) {
-            logger.debug("field = [" + field.getName() + "], jpaColumnName = [" + jpaColumnName + "], valueObj = [" + valueObj + "]");
-            gaeEntity.setProperty(jpaColumnName, valueObj);
+            logger.debug("field = [" + attribute.getField().getName() + "], jpaColumnName = [" + jpaColumnName + "], valueObj = [" + valueObj + "]");
+            setProperty(gaeEntity, jpaColumnName, valueObj, attribute.isIndexed());
         }
     }
 
-    private void processEmbeddableAttribute(Entity gaeEntity, Object entity, Attribute attribute, MetamodelImpl metamodel) {
-        Field field = (Field) attribute.getJavaMember();
-        String jpaColumnName = ((AbstractAttribute) attribute).getJPAColumnName();
-        Object embeddedObj = PropertyAccessorHelper.getObject(entity, field);
-        logger.debug("field = [" + field.getName() + "], jpaColumnName = [" + jpaColumnName + "], embeddedObj = [" + embeddedObj + "]");
+    /*
+     * index rows are written only for properties that can be used in queries,
+     * serialized values and embedded entities are never indexed.
+     */
+    private void setProperty(PropertyContainer gaeEntity, String name, Object value, boolean indexed) {
+        if (indexed && !(value instanceof Blob) && !(value instanceof EmbeddedEntity)) {
+            gaeEntity.setProperty(name, value);
+        } else {
+            gaeEntity.setUnindexedProperty(name, value);
+        }
+    }
+
+    private void processEmbeddableAttribute(Entity gaeEntity, Object entity, AttributeMapping attribute) {
+        String jpaColumnName = attribute.getColumnName();
+        Object embeddedObj = attribute.getValue(entity);
+        logger.debug("field = [" + attribute.getField().getName() + "], jpaColumnName = [" + jpaColumnName + "], embeddedObj = [" + embeddedObj + "]");
 
         EmbeddedEntity embeddedEntity = new EmbeddedEntity();
-        EmbeddableType embeddable = metamodel.embeddable(((AbstractAttribute) attribute).getBindableJavaType());
-        Set<Attribute> embeddedAttributes = embeddable.getAttributes();
-        for (Attribute embeddedAttribute : embeddedAttributes) {
+        for (AttributeMapping embeddedAttribute : attribute.getEmbeddedAttributes()) {
             processAttribute(embeddedEntity, embeddedObj, embeddedAttribute);
         }
-        gaeEntity.setProperty(jpaColumnName, embeddedEntity);
+        setProperty(gaeEntity, jpaColumnName, embeddedEntity, attribute.isIndexed());
     }
 
     private void handleRelations(Entity gaeEntity, EntityMetadata entityMetadata, List<RelationHolder> rlHolders) {
@@ -193,9 +323,9 @@ public class DatastoreClient extends ClientBase implements Client<DatastoreQuery
         }
     }
 
-    private void handleDiscriminatorColumn(Entity gaeEntity, EntityType entityType) {
-        String discriminatorColumn = ((AbstractManagedType) entityType).getDiscriminatorColumn();
-        String discriminatorValue = ((AbstractManagedType) entityType).getDiscriminatorValue();
+    private void handleDiscriminatorColumn(Entity gaeEntity, EntityMapping mapping) {
+        String discriminatorColumn = mapping.getDiscriminatorColumn();
+        String discriminatorValue = mapping.getDiscriminatorValue();
 
         if (discriminatorColumn != null && discriminatorValue != null) {
             logger.debug("discriminatorColumn = [" + discriminatorColumn + "], discriminatorValue = [" + discriminatorValue + "]");
@@ -216,6 +346,12 @@ public class DatastoreClient extends ClientBase implements Client<DatastoreQuery
      *  -----------------------------------------------------------------------
      *
      *  note: owner and child are datastore ids
+     *
+     * when join table keys are DERIVED each row is a root entity named after
+     * both the owner and the child id (owner|child), so that writing the same
+     * link twice overwrites the same row, without putting all the links of an
+     * owner in the same entity group. Separators within ids are escaped so
+     * that different links never share a row.
      */
     @Override
     public void persistJoinTable(JoinTableData joinTableData) {
@@ -224,17 +360,37 @@ public class DatastoreClient extends ClientBase implements Client<DatastoreQuery
         String inverseJoinColumnName = joinTableData.getInverseJoinColumnName();
         Map<Object, Set<Object>> joinTableRecords = joinTableData.getJoinTableRecords();
 
+        List<Entity> entities = new ArrayList<>();
         for (Object owner : joinTableRecords.keySet()) {
             Set<Object> children = joinTableRecords.get(owner);
             for (Object child : children) {
-                /* let datastore generate ID for the entity */
-                Entity gaeEntity = DatastoreUtils.createDatastoreEntity(joinTableName);
+                Entity gaeEntity;
+                if (isJoinTableKeyDerived()) {
+                    gaeEntity = DatastoreUtils.createDatastoreEntity(joinTableName, escapeJoinId(owner) + "|" + escapeJoinId(child));
+                } else {
+                    /* let datastore generate ID for the entity */
+                    gaeEntity = DatastoreUtils.createDatastoreEntity(joinTableName);
+                }
                 gaeEntity.setProperty(joinColumnName, owner);
                 gaeEntity.setProperty(inverseJoinColumnName, child);
-                datastore.put(gaeEntity);
+                entities.add(gaeEntity);
                 logger.info(gaeEntity.toString());
             }
         }
+        /* all the rows are written together, in chunks */
+        put(entities);
+        joinPendingWrites();
+    }
+
+    /*
+     * ids without '|' and '\' are kept as they are.
+     */
+    private static String escapeJoinId(Object id) {
+        return id.toString().replace("\\", "\\\\").replace("|", "\\|");
+    }
+
+    private boolean isJoinTableKeyDerived() {
+        return clientConfig.getJoinTableKeys() == JoinTableKeys.DERIVED;
     }
 
     /*---------------------------------------------------------------------------------*/
@@ -264,45 +420,62 @@ public class DatastoreClient extends ClientBase implements Client<DatastoreQuery
     }
 
     private Entity get(String kind, Object id) {
-        try {
-            Key key;
-            if (id instanceof Key) {
-                /* case id is field retrieved from datastore */
-                key = (Key) id;
+        Key key;
+        if (id instanceof Key) {
+            /* case id is field retrieved from datastore */
+            key = (Key) id;
+        } else {
+            key = DatastoreUtils.createKey(kind, id);
+        }
+        if (sessionCache != null && sessionCache.contains(key)) {
+            logger.debug("found in session {kind = [" + kind + "], id = [" + id + "]}");
+            return sessionCache.get(key);
+        }
+        /* pending writes evict cached entities when they complete */
+        joinPendingWrites();
+        Entity gaeEntity = isCached(key) ? entityCache.get(key) : null;
+        if (gaeEntity != null) {
+            logger.debug("found in cache {kind = [" + kind + "], id = [" + id + "]}");
+        } else {
+            try {
+                gaeEntity = datastore.get(key);
+                if (isCached(key)) {
+                    entityCache.put(gaeEntity);
+                }
+            } catch (EntityNotFoundException e) {
+                logger.info("Not found {kind = [" + kind + "], id = [" + id + "]}");
+            }
+        }
+        if (sessionCache != null) {
+            if (gaeEntity != null) {
+                sessionCache.put(gaeEntity);
             } else {
-                key = DatastoreUtils.createKey(kind, id);
+                sessionCache.putAbsent(key);
             }
-            return datastore.get(key);
-        } catch (EntityNotFoundException e) {
-            logger.info("Not found {kind = [" + kind + "], id = [" + id + "]}");
-            return null;
         }
+        return gaeEntity;
     }
 
     private EnhanceEntity initializeEntity(Entity gaeEntity, Class entityClass) throws IllegalAccessException, InstantiationException {
-        EntityMetadata entityMetadata = KunderaMetadataManager.getEntityMetadata(kunderaMetadata, entityClass);
-        MetamodelImpl metamodel = KunderaMetadataManager.getMetamodel(kunderaMetadata, entityMetadata.getPersistenceUnit());
-        EntityType entityType = metamodel.entity(entityMetadata.getEntityClazz());
-        String idAttribute = ((AbstractAttribute) entityMetadata.getIdAttribute()).getJPAColumnName();
+        EntityMapping mapping = mappings.getMapping(entityClass);
 
         Map<String, Object> relationMap = new HashMap<>();
-        Object entity = entityMetadata.getEntityClazz().newInstance();
-
-        initializeID(gaeEntity, entityMetadata, entity);
-        Set<Attribute> attributes = entityType.getAttributes();
-        for (Attribute attribute : attributes) {
-            // ignore id attribute, handled in initializeID(...)
-            if (((AbstractAttribute) attribute).getJPAColumnName().equals(idAttribute)) {
-                continue;
-            }
-            if (!attribute.isAssociation()) {
-                if (metamodel.isEmbeddable(((AbstractAttribute) attribute).getBindableJavaType())) {
-                    initializeEmbeddedAttribute(gaeEntity, entity, attribute, metamodel);
-                } else {
+        Object entity = mapping.newInstance();
+
+        // id attribute is not in mapping, handled in initializeID(...)
+        initializeID(gaeEntity, mapping, entity);
+        for (AttributeMapping attribute : mapping.getAttributes()) {
+            switch (attribute.getType()) {
+                case RELATION:
+                    if (!attribute.isFilledByQuery()) {
+                        initializeRelation(gaeEntity, attribute, relationMap);
+                    }
+                    break;
+                case EMBEDDED:
+                    initializeEmbeddedAttribute(gaeEntity, entity, attribute);
+                    break;
+                default:
                     initializeAttribute(gaeEntity, entity, attribute);
-                }
-            } else if (!relationWillBeFilledByQuery(entityMetadata, attribute)) {
-                initializeRelation(gaeEntity, attribute, relationMap);
             }
         }
         logger.info(entity.toString());
@@ -310,20 +483,14 @@ public class DatastoreClient extends ClientBase implements Client<DatastoreQuery
         return new EnhanceEntity(entity, gaeEntity.getKey().getName(), relationMap.isEmpty() ? null : relationMap);
     }
 
-    private boolean relationWillBeFilledByQuery(EntityMetadata entityMetadata, Attribute attribute) {
-        Relation.ForeignKey relationType = entityMetadata.getRelation(attribute.getName()).getType();
-        return relationType.equals(Relation.ForeignKey.ONE_TO_MANY) || relationType.equals(Relation.ForeignKey.MANY_TO_MANY);
-    }
-
-    private void initializeID(Entity gaeEntity, EntityMetadata entityMetadata, Object entity) {
-        String jpaColumnName = ((AbstractAttribute) entityMetadata.getIdAttribute()).getJPAColumnName();
+    private void initializeID(Entity gaeEntity, EntityMapping mapping, Object entity) {
         Object id = gaeEntity.getKey().getName();
         if (id == null) {
             /* case datastore generated long */
             id = gaeEntity.getKey().getId();
         }
-        logger.debug("jpaColumnName = [" + jpaColumnName + "], fieldValue = [" + id + "]");
-        PropertyAccessorHelper.setId(entity, entityMetadata, id);
+        logger.debug("jpaColumnName = [" + mapping.getIdColumn() + "], fieldValue = [" + id + "]");
+        PropertyAccessorHelper.setId(entity, mapping.getEntityMetadata(), id);
     }
 
     /* (non-Javadoc)
@@ -334,55 +501,94 @@ public class DatastoreClient extends ClientBase implements Client<DatastoreQuery
      * @see com.google.appengine.api.datastore.EmbeddedEntity
      * @see com.google.appengine.api.datastore.Entity
      */
-    private void initializeAttribute(PropertyContainer gaeEntity, Object entity, Attribute attribute) {
-        String jpaColumnName = ((AbstractAttribute) attribute).getJPAColumnName();
-        Object fieldValue = gaeEntity.getProperties().get(jpaColumnName);
+    private void initializeAttribute(PropertyContainer gaeEntity, Object entity, AttributeMapping attribute) {
+        String jpaColumnName = attribute.getColumnName();
+        Object fieldValue = gaeEntity.getProperty(jpaColumnName);
 
         if (fieldValue instanceof Blob) {
-            try {
+            Blob blob = (Blob) fieldValue;
+            if (ChunkedBlob.isMarker(blob) && gaeEntity instanceof Entity) {
+                blob = readChunks(((Entity) gaeEntity).getKey(), jpaColumnName, blob);
+            }
+            Class<?> fieldType = attribute.getField().getType();
+            if (clientConfig.isLazyBlobs() && LazyValues.isSupported(fieldType)) {
+                /* deserialized on first access */
+                fieldValue = LazyValues.wrap(fieldType, blob, codec);
+            } else {
                 /* deserialize reconstruct also the original object class */
-                fieldValue = DatastoreUtils.deserialize((Blob) fieldValue);
-            } catch (ClassNotFoundException | IOException e) {
-                throw new KunderaException("Some errors occurred while deserializing the object: ", e);
+                fieldValue = deserialize(blob);
             }
-        } else if (((Field) attribute.getJavaMember()).getType().isEnum()) {
-            EnumAccessor accessor = new EnumAccessor();
-            fieldValue = accessor.fromString(((AbstractAttribute) attribute).getBindableJavaType(), fieldValue.toString());
+        } else if (attribute.getType() == AttributeMapping.Type.COLLECTION) {
+            /* collections and maps stored as list properties and embedded entities */
+            fieldValue = CollectionConverter.fromDatastore(fieldValue, attribute.getField().getType());
+        } else {
+            fieldValue = attribute.fromDatastore(fieldValue);
         }
 
-        if (jpaColumnName != null && fieldValue != null) {
+        if (fieldValue != null) {
             logger.debug("jpaColumnName = [" + jpaColumnName + "], fieldValue = [" + fieldValue + "]");
-            PropertyAccessorHelper.set(entity, (Field) attribute.getJavaMember(), fieldValue);
+            attribute.setValue(entity, fieldValue);
         }
     }
 
-    private void initializeEmbeddedAttribute(Entity gaeEntity, Object entity, Attribute attribute, MetamodelImpl metamodel) {
-        String jpaColumnName = ((AbstractAttribute) attribute).getJPAColumnName();
-        EmbeddedEntity embeddedEntity = (EmbeddedEntity) gaeEntity.getProperties().get(jpaColumnName);
+    /*
+     * all the chunks of a value are read with a single batch get.
+     */
+    private Blob readChunks(Key owner, String property, Blob marker) {
+        List<Key> keys = ChunkedBlob.chunkKeys(owner, property, marker);
+        Map<Key, Entity> chunks = get(keys);
+        List<Entity> orderedChunks = new ArrayList<>(keys.size());
+        for (Key key : keys) {
+            orderedChunks.add(chunks.get(key));
+        }
+        try {
+            return ChunkedBlob.join(marker, orderedChunks);
+        } catch (IOException e) {
+            throw new KunderaException("Some errors occurred while reading chunks of " + property + ": ", e);
+        }
+    }
+
+    private Blob serialize(Object value) {
+        try {
+            return codec.serialize(value);
+        } catch (IOException e) {
+            throw new KunderaException("Some errors occurred while serializing the object: ", e);
+        }
+    }
+
+    private Object deserialize(Blob blob) {
+        try {
+            return codec.deserialize(blob);
+        } catch (ClassNotFoundException | IOException e) {
+            throw new KunderaException("Some errors occurred while deserializing the object: ", e);
+        }
+    }
 
-        if (jpaColumnName != null && embeddedEntity != null) {
+    private void initializeEmbeddedAttribute(Entity gaeEntity, Object entity, AttributeMapping attribute) {
+        String jpaColumnName = attribute.getColumnName();
+        EmbeddedEntity embeddedEntity = (EmbeddedEntity) gaeEntity.getProperty(jpaColumnName);
+
+        if (embeddedEntity != null) {
             logger.debug("jpaColumnName = [" + jpaColumnName + "], embeddedEntity = [" + embeddedEntity + "]");
 
             try {
-                EmbeddableType embeddable = metamodel.embeddable(((AbstractAttribute) attribute).getBindableJavaType());
-                Object embeddedObj = embeddable.getJavaType().newInstance();
-                Set<Attribute> embeddedAttributes = embeddable.getAttributes();
-                for (Attribute embeddedAttribute : embeddedAttributes) {
+                Object embeddedObj = attribute.newEmbeddedInstance();
+                for (AttributeMapping embeddedAttribute : attribute.getEmbeddedAttributes()) {
                     initializeAttribute(embeddedEntity, embeddedObj, embeddedAttribute);
                 }
-                PropertyAccessorHelper.set(entity, (Field) attribute.getJavaMember(), embeddedObj);
-            } catch (InstantiationException | IllegalAccessException e) {
+                attribute.setValue(entity, embeddedObj);
+            } catch (InstantiationException e) {
                 throw new KunderaException("Some errors occurred while reconstructing embedded attribute " + jpaColumnName + ": ", e);
             }
         }
     }
 
-    private void initializeRelation(Entity gaeEntity, Attribute attribute, Map<String, Object> relationMap) {
-        String jpaColumnName = ((AbstractAttribute) attribute).getJPAColumnName();
-        Object fieldValue = gaeEntity.getProperties().get(jpaColumnName);
+    private void initializeRelation(Entity gaeEntity, AttributeMapping attribute, Map<String, Object> relationMap) {
+        String jpaColumnName = attribute.getColumnName();
+        Object fieldValue = gaeEntity.getProperty(jpaColumnName);
         logger.debug("jpaColumnName = [" + jpaColumnName + "], fieldValue = [" + fieldValue + "]");
 
-        if (jpaColumnName != null && fieldValue != null) {
+        if (fieldValue != null) {
             relationMap.put(jpaColumnName, fieldValue);
         }
     }
@@ -398,11 +604,27 @@ public class DatastoreClient extends ClientBase implements Client<DatastoreQuery
     public <E> List<E> findAll(Class<E> entityClass, String[] columnsToSelect, Object... keys) {
         logger.debug("entityClass = [" + entityClass + "], columnsToSelect = [" + Arrays.toString(columnsToSelect) + "], keys = [" + Arrays.toString(keys) + "]");
 
-        List results = new ArrayList();
+        EntityMetadata entityMetadata = KunderaMetadataManager.getEntityMetadata(kunderaMetadata, entityClass);
+        List<Key> datastoreKeys = new ArrayList<>();
         for (Object key : keys) {
-            Object object = this.find(entityClass, key);
-            if (object != null) {
-                results.add(object);
+            if (key instanceof Key) {
+                datastoreKeys.add((Key) key);
+            } else {
+                datastoreKeys.add(DatastoreUtils.createKey(entityMetadata.getTableName(), key));
+            }
+        }
+
+        List results = new ArrayList();
+        Map<Key, Entity> gaeEntities = get(datastoreKeys);
+        /* keep the order of the requested keys, not found ones are skipped */
+        for (Key key : datastoreKeys) {
+            Entity gaeEntity = gaeEntities.get(key);
+            if (gaeEntity != null) {
+                try {
+                    results.add(initializeEntity(gaeEntity, entityClass));
+                } catch (InstantiationException | IllegalAccessException e) {
+                    throw new KunderaException(e);
+                }
             }
         }
         return results;
@@ -425,6 +647,10 @@ public class DatastoreClient extends ClientBase implements Client<DatastoreQuery
      * for example:
      *      select * from EmployeeMTObis (table name of entityClass)
      *      where DEPARTMENT_ID (colName) equals (colValue)
+     *
+     * children are retrieved with a keys-only query whose keys, read in
+     * batches of relation batch threshold, are each followed by a batch get,
+     * so large relations never pay for a second query.
      */
     @Override
     public List<Object> findByRelation(String colName, Object colValue, Class entityClass) {
@@ -439,13 +665,39 @@ public class DatastoreClient extends ClientBase implements Client<DatastoreQuery
         String targetTableName = targetMetadata.getTableName();
         Key targetKey = DatastoreUtils.createKey(targetTableName, colValue);
 
-        Query query = generateRelationQuery(tableName, colName, targetKey);
-        query.setKeysOnly();
+        List<Entity> entities;
+        int threshold = clientConfig.getRelationBatchThreshold();
+        if (threshold > 0) {
+            Query keysQuery = generateRelationQuery(tableName, colName, targetKey);
+            keysQuery.setKeysOnly();
+            joinPendingWrites();
+            Iterator<Entity> keysOnly = datastore.prepare(keysQuery)
+                    .asIterator(FetchOptions.Builder.withChunkSize(threshold).prefetchSize(threshold));
+            entities = new ArrayList<>();
+            List<Key> keys = new ArrayList<>();
+            while (keysOnly.hasNext()) {
+                keys.add(keysOnly.next().getKey());
+                if (keys.size() == threshold || !keysOnly.hasNext()) {
+                    Map<Key, Entity> gaeEntities = get(keys);
+                    for (Key key : keys) {
+                        if (gaeEntities.containsKey(key)) {
+                            entities.add(gaeEntities.get(key));
+                        }
+                    }
+                    keys = new ArrayList<>();
+                }
+            }
+        } else {
+            entities = getQueryResults(generateRelationQuery(tableName, colName, targetKey));
+        }
 
         List<Object> results = new ArrayList<>();
-        List<Entity> entities = getQueryResults(query);
         for (Entity entity : entities) {
-            results.add(find(entityClass, entity.getKey()));
+            try {
+                results.add(initializeEntity(entity, entityClass));
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new KunderaException(e);
+            }
         }
         return results;
     }
@@ -464,11 +716,10 @@ public class DatastoreClient extends ClientBase implements Client<DatastoreQuery
     public <E> List<E> getColumnsById(String schemaName, String tableName, String pKeyColumnName, String columnName, Object pKeyColumnValue, Class columnJavaType) {
         logger.debug("schemaName = [" + schemaName + "], tableName = [" + tableName + "], pKeyColumnName = [" + pKeyColumnName + "], columnName = [" + columnName + "], pKeyColumnValue = [" + pKeyColumnValue + "], columnJavaType = [" + columnJavaType + "]");
 
-        Query query = generateRelationQuery(tableName, pKeyColumnName, pKeyColumnValue);
-
         List<E> results = new ArrayList<>();
-        List<Entity> entities = getQueryResults(query);
         logger.debug(columnName + " for " + pKeyColumnName + "[" + pKeyColumnValue + "]:");
+        Query query = generateRelationQuery(tableName, pKeyColumnName, pKeyColumnValue);
+        List<Entity> entities = getQueryResults(query);
         for (Entity entity : entities) {
             logger.debug("\t" + entity.getProperty(columnName));
             results.add((E) entity.getProperty(columnName));
@@ -512,7 +763,8 @@ public class DatastoreClient extends ClientBase implements Client<DatastoreQuery
 
         EntityMetadata entityMetadata = KunderaMetadataManager.getEntityMetadata(kunderaMetadata, entity.getClass());
         Key key = DatastoreUtils.createKey(entityMetadata.getTableName(), pKey);
-        datastore.delete(key);
+        delete(withChunkKeys(Collections.singletonList(key)));
+        joinPendingWrites();
     }
 
     /* (non-Javadoc)
@@ -523,6 +775,9 @@ public class DatastoreClient extends ClientBase implements Client<DatastoreQuery
      *      delete from EMPLOYEE_PROJECT (tableName)
      *      where EMPLOYEE_ID (columnName) equals (columnValue)
      *
+     * Kundera gives only the owner id, not the children, so even with derived
+     * keys the rows are found with a keys-only query, which is eventually
+     * consistent, and then deleted by key.
      */
     @Override
     public void deleteByColumn(String schemaName, String tableName, String columnName, Object columnValue) {
@@ -531,9 +786,425 @@ public class DatastoreClient extends ClientBase implements Client<DatastoreQuery
         Query query = generateRelationQuery(tableName, columnName, columnValue);
         query.setKeysOnly();
 
-        List<Entity> entities = getQueryResults(query);
+        List<Key> keys = new ArrayList<>();
+        for (Entity entity : getQueryResults(query)) {
+            keys.add(entity.getKey());
+        }
+        delete(keys);
+        joinPendingWrites();
+    }
+
+    /*---------------------------------------------------------------------------------*/
+    /*------------------------------ BATCH OPERATIONS ---------------------------------*/
+    /*---------------------------------------------------------------------------------*/
+
+    /* (non-Javadoc)
+     *
+     * called by Kundera during flush in place of persist/delete
+     * when "kundera.batch.size" is specified in persistence.xml.
+     */
+    @Override
+    public void addBatch(Node node) {
+        if (node != null) {
+            nodes.add(node);
+        }
+        if (batchSize > 0 && nodes.size() >= batchSize) {
+            executeBatch();
+        }
+    }
+
+    /* (non-Javadoc)
+     *
+     * entities are built exactly as in onPersist and indexed as in
+     * persist but are written together through multi-entity put, removed
+     * entities (including cascaded ones) are deleted together as well.
+     */
+    @Override
+    public int executeBatch() {
+        int processed = 0;
+        List<Entity> entities = new ArrayList<>();
+        List<Key> removed = new ArrayList<>();
+        for (Node node : nodes) {
+            if (node.isDirty()) {
+                node.handlePreEvent();
+                EntityMetadata entityMetadata = KunderaMetadataManager.getEntityMetadata(kunderaMetadata, node.getDataClass());
+                if (node.isInState(RemovedState.class)) {
+                    removed.add(DatastoreUtils.createKey(entityMetadata.getTableName(), node.getEntityId()));
+                } else {
+                    entities.add(createEntity(entityMetadata, node.getData(), node.getEntityId(), getRelationHolders(node)));
+                    /* secondary indexes are updated as ClientBase.persist does */
+                    indexNode(node, entityMetadata);
+                }
+                node.handlePostEvent();
+                processed++;
+            }
+        }
+        put(entities);
+        delete(withChunkKeys(removed));
+        joinPendingWrites();
+        nodes.clear();
+        return processed;
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public void clear() {
+        nodes.clear();
+    }
+
+    /*---------------------------------------------------------------------------------*/
+    /*------------------------------ DATASTORE UTILS ----------------------------------*/
+    /*---------------------------------------------------------------------------------*/
+
+    /*
+     * split entities in chunks that respect both the maximum number of
+     * entities and the (estimated) maximum size of a single put RPC.
+     */
+    private void put(List<Entity> entities) {
+        List<Key> staleChunks = Collections.emptyList();
+        if (clientConfig.getChunkSize() > 0) {
+            /* chunks of the stored values, before markers replace the new ones */
+            List<Key> keys = new ArrayList<>();
+            for (Entity entity : entities) {
+                keys.add(entity.getKey());
+            }
+            List<Key> storedChunks = storedChunkKeys(keys);
+            entities = withChunks(entities);
+            staleChunks = staleChunkKeys(storedChunks, entities);
+        }
+        List<Entity> chunk = new ArrayList<>();
+        long chunkBytes = 0;
+        for (Entity entity : entities) {
+            long entityBytes = DatastoreUtils.estimateSize(entity);
+            if (!chunk.isEmpty() && (chunk.size() >= DatastoreConstants.MAX_PUT_ENTITIES ||
+                    chunkBytes + entityBytes > DatastoreConstants.MAX_PUT_BYTES)) {
+                putChunk(chunk);
+                chunk = new ArrayList<>();
+                chunkBytes = 0;
+            }
+            chunk.add(entity);
+            chunkBytes += entityBytes;
+        }
+        if (!chunk.isEmpty()) {
+            putChunk(chunk);
+        }
+        if (!staleChunks.isEmpty()) {
+            logger.debug("delete " + staleChunks.size() + " stale chunks");
+            delete(staleChunks);
+        }
+    }
+
+    /*
+     * blobs too large to be kept inline are moved to chunk entities,
+     * children of their owner, written together with it.
+     */
+    private List<Entity> withChunks(List<Entity> entities) {
+        List<Entity> chunkEntities = new ArrayList<>();
+        for (Entity entity : entities) {
+            chunkEntities.addAll(ChunkedBlob.split(entity, clientConfig.getChunkSize()));
+        }
+        if (chunkEntities.isEmpty()) {
+            return entities;
+        }
+        logger.debug("split large values in " + chunkEntities.size() + " chunks");
+        List<Entity> all = new ArrayList<>(entities);
+        all.addAll(chunkEntities);
+        return all;
+    }
+
+    private void putChunk(List<Entity> chunk) {
+        logger.debug("put " + chunk.size() + " entities");
+        List<Key> keys = new ArrayList<>();
+        for (Entity entity : chunk) {
+            keys.add(entity.getKey());
+        }
+        onWrite(keys);
+        if (asyncDatastore == null) {
+            datastore.put(chunk);
+            evictCached(keys);
+            return;
+        }
+        beforeAsyncWrite(keys);
+        pendingWrites.add(asyncDatastore.put(chunk));
+    }
+
+    /*
+     * batch get, split in chunks that respect the maximum number of keys per RPC,
+     * in async mode all the chunks are requested concurrently.
+     */
+    private Map<Key, Entity> get(List<Key> keys) {
+        Map<Key, Entity> gaeEntities = new HashMap<>();
+        if (sessionCache == null) {
+            fetch(keys, gaeEntities);
+            return gaeEntities;
+        }
+        List<Key> missing = new ArrayList<>();
+        for (Key key : keys) {
+            if (sessionCache.contains(key)) {
+                Entity gaeEntity = sessionCache.get(key);
+                if (gaeEntity != null) {
+                    gaeEntities.put(key, gaeEntity);
+                }
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<Key, Entity> fetched = new HashMap<>();
+            fetch(missing, fetched);
+            for (Key key : missing) {
+                Entity gaeEntity = fetched.get(key);
+                if (gaeEntity != null) {
+                    sessionCache.put(gaeEntity);
+                } else {
+                    sessionCache.putAbsent(key);
+                }
+            }
+            gaeEntities.putAll(fetched);
+        }
+        return gaeEntities;
+    }
+
+    private void fetch(List<Key> keys, Map<Key, Entity> gaeEntities) {
+        /* pending writes evict cached entities when they complete */
+        joinPendingWrites();
+        if (entityCache != null) {
+            keys = getCached(keys, gaeEntities);
+            if (keys.isEmpty()) {
+                return;
+            }
+        }
+        fetchStored(keys, gaeEntities);
+        if (entityCache != null) {
+            cache(keys, gaeEntities);
+        }
+    }
+
+    /*
+     * batch get straight from datastore, split in chunks that respect
+     * the maximum number of keys per RPC, caches are neither read nor filled.
+     */
+    private void fetchStored(List<Key> keys, Map<Key, Entity> gaeEntities) {
+        List<Future<Map<Key, Entity>>> futures = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i += DatastoreConstants.MAX_GET_KEYS) {
+            List<Key> chunk = keys.subList(i, Math.min(i + DatastoreConstants.MAX_GET_KEYS, keys.size()));
+            logger.debug("get " + chunk.size() + " entities");
+            if (asyncDatastore == null) {
+                gaeEntities.putAll(datastore.get(chunk));
+            } else {
+                futures.add(asyncDatastore.get(chunk));
+            }
+        }
+        for (Future<Map<Key, Entity>> future : futures) {
+            gaeEntities.putAll(await(future));
+        }
+    }
+
+    /*
+     * collect cached entities and return the keys still to be read.
+     */
+    private List<Key> getCached(List<Key> keys, Map<Key, Entity> gaeEntities) {
+        List<Key> cachedKeys = new ArrayList<>();
+        for (Key key : keys) {
+            if (isCached(key)) {
+                cachedKeys.add(key);
+            }
+        }
+        if (cachedKeys.isEmpty()) {
+            return keys;
+        }
+        gaeEntities.putAll(entityCache.getAll(cachedKeys));
+        logger.debug("found " + gaeEntities.size() + " entities in cache");
+        List<Key> missing = new ArrayList<>();
+        for (Key key : keys) {
+            if (!gaeEntities.containsKey(key)) {
+                missing.add(key);
+            }
+        }
+        return missing;
+    }
+
+    private void cache(List<Key> keys, Map<Key, Entity> gaeEntities) {
+        List<Entity> toCache = new ArrayList<>();
+        for (Key key : keys) {
+            Entity gaeEntity = gaeEntities.get(key);
+            if (gaeEntity != null && isCached(key)) {
+                toCache.add(gaeEntity);
+            }
+        }
+        if (!toCache.isEmpty()) {
+            entityCache.putAll(toCache);
+        }
+    }
+
+    /*
+     * batch delete, split in chunks that respect the maximum number of keys per RPC.
+     */
+    private void delete(List<Key> keys) {
+        for (int i = 0; i < keys.size(); i += DatastoreConstants.MAX_DELETE_KEYS) {
+            List<Key> chunk = keys.subList(i, Math.min(i + DatastoreConstants.MAX_DELETE_KEYS, keys.size()));
+            logger.debug("delete " + chunk.size() + " entities");
+            onWrite(chunk);
+            if (asyncDatastore == null) {
+                datastore.delete(chunk);
+                evictCached(chunk);
+            } else {
+                beforeAsyncWrite(chunk);
+                pendingWrites.add(asyncDatastore.delete(chunk));
+            }
+        }
+    }
+
+    /*
+     * chunks of removed entities are derived from the markers of the stored
+     * entities, read with a batch get, only when chunked values are enabled.
+     */
+    private List<Key> withChunkKeys(List<Key> keys) {
+        if (clientConfig.getChunkSize() <= 0 || keys.isEmpty()) {
+            return keys;
+        }
+        List<Key> all = new ArrayList<>(keys);
+        all.addAll(storedChunkKeys(keys));
+        return all;
+    }
+
+    /*
+     * only entities of kinds that may hold blobs are read, straight from
+     * datastore since a stale cached entity would give the wrong chunks.
+     */
+    private List<Key> storedChunkKeys(List<Key> keys) {
+        List<Key> ownerKeys = new ArrayList<>();
+        for (Key key : keys) {
+            if (key.isComplete() && mappings.storesBlobs(key.getKind())) {
+                ownerKeys.add(key);
+            }
+        }
+        List<Key> chunkKeys = new ArrayList<>();
+        if (ownerKeys.isEmpty()) {
+            return chunkKeys;
+        }
+        joinPendingWrites();
+        Map<Key, Entity> stored = new HashMap<>();
+        fetchStored(ownerKeys, stored);
+        for (Entity gaeEntity : stored.values()) {
+            chunkKeys.addAll(ChunkedBlob.chunkKeys(gaeEntity));
+        }
+        return chunkKeys;
+    }
+
+    /*
+     * chunks of the stored values that are not overwritten, i.e. of values
+     * no longer chunked or now split in fewer chunks.
+     */
+    private List<Key> staleChunkKeys(List<Key> storedChunks, List<Entity> entities) {
+        if (storedChunks.isEmpty()) {
+            return storedChunks;
+        }
+        Set<Key> stale = new LinkedHashSet<>(storedChunks);
         for (Entity entity : entities) {
-            datastore.delete(entity.getKey());
+            stale.remove(entity.getKey());
+        }
+        return new ArrayList<>(stale);
+    }
+
+    /*
+     * discard client side state made stale by a write,
+     * cached entities are evicted once the write is completed.
+     */
+    private void onWrite(List<Key> keys) {
+        if (cursorCache != null) {
+            for (Key key : keys) {
+                cursorCache.invalidate(key.getKind());
+            }
+        }
+        if (queryResultCache != null) {
+            for (Key key : keys) {
+                queryResultCache.invalidate(key.getKind());
+            }
+        }
+        if (sessionCache != null) {
+            sessionCache.evictAll(keys);
+        }
+    }
+
+    /*
+     * evicting before the write completes would let a concurrent read
+     * put the old entity back in cache until it expires.
+     */
+    private void evictCached(Collection<Key> keys) {
+        if (entityCache != null) {
+            List<Key> cachedKeys = new ArrayList<>();
+            for (Key key : keys) {
+                if (isCached(key)) {
+                    cachedKeys.add(key);
+                }
+            }
+            if (!cachedKeys.isEmpty()) {
+                entityCache.evictAll(cachedKeys);
+            }
+        }
+    }
+
+    private boolean isCached(Key key) {
+        if (entityCache == null || !key.isComplete()) {
+            return false;
+        }
+        Set<String> cachedKinds = clientConfig.getCacheKinds();
+        return cachedKinds.isEmpty() || cachedKinds.contains(key.getKind());
+    }
+
+    /*
+     * independent writes are left running concurrently, a write that
+     * touches a key with a pending write waits for pending writes to
+     * complete so that operations on the same entity are not reordered.
+     */
+    private void beforeAsyncWrite(List<Key> keys) {
+        for (Key key : keys) {
+            if (key.isComplete() && pendingKeys.contains(key)) {
+                joinPendingWrites();
+                break;
+            }
+        }
+        for (Key key : keys) {
+            if (key.isComplete()) {
+                pendingKeys.add(key);
+            }
+        }
+    }
+
+    /*
+     * wait for the completion of async writes, is invoked before any read,
+     * at the end of a batch and of each write made outside of a batch, so that
+     * write failures are reported by the flush that issued the writes.
+     */
+    private void joinPendingWrites() {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+        logger.debug("join " + pendingWrites.size() + " pending writes");
+        try {
+            for (Future<?> write : pendingWrites) {
+                await(write);
+            }
+        } finally {
+            evictCached(pendingKeys);
+            pendingWrites.clear();
+            pendingKeys.clear();
+        }
+    }
+
+    private <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KunderaException("Interrupted while waiting for datastore: ", e);
+        } catch (ExecutionException e) {
+            throw new KunderaException("Some errors occurred while accessing datastore: ", e.getCause());
         }
     }
 
@@ -550,35 +1221,210 @@ public class DatastoreClient extends ClientBase implements Client<DatastoreQuery
         return query;
     }
 
+    /*
+     * results are streamed from datastore in chunks and mapped one by one,
+     * so raw datastore entities are never held all together in memory.
+     *
+     * when an offset is requested the query starts from the nearest cursor
+     * reached by a previous execution, so that datastore does not have to
+     * skip again all the preceding results.
+     *
+     * when the query result cache is enabled the keys of the results are
+     * kept and a repeated query is resolved with a batch get.
+     *
+     * when fan out is enabled queries with IN or OR filters are run as
+     * concurrent sub-queries whose results are merged client side.
+     */
     public List<Object> executeQuery(QueryBuilder builder) {
-        logger.info(builder.getQuery().toString());
-
+        Query query = builder.getQuery();
+        logger.info(query.toString());
+
+        String queryString = query.toString();
+        int offset = builder.getOffset();
+        /* projections do not give back whole entities, they cannot be resolved by key */
+        boolean useResultCache = queryResultCache != null && query.getProjections().isEmpty();
+        String resultKey = queryString + " LIMIT " + builder.getLimit() + " OFFSET " + offset;
+        if (useResultCache) {
+            List<Key> keys = queryResultCache.get(resultKey);
+            if (keys != null) {
+                logger.debug("found " + keys.size() + " results in query cache");
+                return toCachedQueryResults(keys, builder);
+            }
+        }
+        boolean useCursors = cursorCache != null && builder.supportsCursors();
+
+        joinPendingWrites();
+        QueryResultIterator<Entity> queryIterator = null;
+        Iterator<Entity> iterator = null;
+        /* sub-queries cannot skip results on their own, queries with an offset are left to datastore */
+        if (fanOut != null && !builder.supportsCursors() && offset == 0) {
+            iterator = fanOut.execute(query, getFetchOptions(builder.getLimit()));
+        }
+        if (iterator == null) {
+            queryIterator = datastore.prepare(query).asQueryResultIterator(getFetchOptions(builder, queryString, useCursors));
+            iterator = queryIterator;
+        }
         List<Object> results = new ArrayList<>();
-        List<Entity> entities = getQueryResults(builder.getQuery(), builder.getLimit());
-        for (Entity entity : entities) {
-            logger.debug(entity.toString());
-            try {
-                EnhanceEntity ee = initializeEntity(entity, builder.getEntityClass());
-                if (!builder.holdRelationships()) {
-                        /* comes from DatastoreQuery.populateEntities */
-                    results.add(ee.getEntity());
-                } else {
-                        /* comes from DatastoreQuery.recursivelyPopulateEntities */
-                    results.add(ee);
+        List<Key> resultKeys = new ArrayList<>();
+        AttributeMapping[] projected = query.getProjections().isEmpty() ? null : getProjectedAttributes(query, builder);
+        while (results.size() < builder.getLimit() && iterator.hasNext()) {
+            Entity entity = iterator.next();
+            if (useResultCache) {
+                resultKeys.add(entity.getKey());
+            }
+            results.add(projected == null ? toQueryResult(entity, builder) : toProjectionResult(entity, builder, projected));
+        }
+        if (useResultCache) {
+            queryResultCache.put(query.getKind(), resultKey, resultKeys);
+        }
+        if (useCursors && queryIterator != null && !results.isEmpty()) {
+            Cursor cursor = queryIterator.getCursor();
+            if (cursor != null) {
+                cursorCache.put(query.getKind(), queryString, offset + results.size(), cursor);
+            }
+        }
+        return results;
+    }
+
+    private FetchOptions getFetchOptions(QueryBuilder builder, String queryString, boolean useCursors) {
+        int offset = builder.getOffset();
+        FetchOptions fetchOptions = getFetchOptions(builder.getLimit());
+        if (offset > 0) {
+            Map.Entry<Integer, Cursor> position = useCursors ? cursorCache.floor(queryString, offset) : null;
+            if (position != null) {
+                logger.debug("resume from cursor at offset " + position.getKey());
+                fetchOptions.startCursor(position.getValue());
+                if (offset > position.getKey()) {
+                    fetchOptions.offset(offset - position.getKey());
                 }
-            } catch (InstantiationException | IllegalAccessException e) {
-                throw new KunderaException(e);
+            } else {
+                fetchOptions.offset(offset);
+            }
+        }
+        return fetchOptions;
+    }
+
+    /*
+     * entities deleted since the query was cached by other instances are skipped.
+     */
+    private List<Object> toCachedQueryResults(List<Key> keys, QueryBuilder builder) {
+        Map<Key, Entity> gaeEntities = get(keys);
+        List<Object> results = new ArrayList<>();
+        for (Key key : keys) {
+            Entity entity = gaeEntities.get(key);
+            if (entity != null) {
+                results.add(toQueryResult(entity, builder));
             }
         }
         return results;
     }
 
-    private List<Entity> getQueryResults(Query query) {
-        return datastore.prepare(query).asList(FetchOptions.Builder.withDefaults());
+    /**
+     * Map datastore entities resulting from a query.
+     *
+     * @param entities datastore entities.
+     * @param builder  the {@link it.polimi.kundera.client.datastore.query.QueryBuilder} of the query.
+     *
+     * @return the mapped entities, {@link com.impetus.kundera.client.EnhanceEntity} if the query holds relationships.
+     */
+    public List<Object> toQueryResults(List<Entity> entities, QueryBuilder builder) {
+        List<Object> results = new ArrayList<>();
+        for (Entity entity : entities) {
+            results.add(toQueryResult(entity, builder));
+        }
+        return results;
     }
 
-    private List<Entity> getQueryResults(Query query, int limit) {
+    /**
+     * Execute a query starting from the given cursor.
+     *
+     * @param query       datastore query.
+     * @param limit       maximum number of results.
+     * @param offset      number of results to skip, after the start cursor if any.
+     * @param startCursor cursor from which to start, can be {@code null}.
+     *
+     * @return a {@link com.google.appengine.api.datastore.QueryResultIterator} over the results.
+     */
+    public QueryResultIterator<Entity> iterateQuery(Query query, int limit, int offset, Cursor startCursor) {
+        logger.info(query.toString());
+        FetchOptions fetchOptions = getFetchOptions(limit);
+        if (offset > 0) {
+            fetchOptions.offset(offset);
+        }
+        if (startCursor != null) {
+            fetchOptions.startCursor(startCursor);
+        }
+        joinPendingWrites();
+        return datastore.prepare(query).asQueryResultIterator(fetchOptions);
+    }
+
+    private Object toQueryResult(Entity entity, QueryBuilder builder) {
+        logger.debug(entity.toString());
+        try {
+            EnhanceEntity ee = initializeEntity(entity, builder.getEntityClass());
+            if (!builder.holdRelationships()) {
+                /* comes from DatastoreQuery.populateEntities */
+                return ee.getEntity();
+            }
+            /* comes from DatastoreQuery.recursivelyPopulateEntities */
+            return ee;
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new KunderaException(e);
+        }
+    }
+
+    /*
+     * embedded attributes and relations cannot be projected, the id is read from the key.
+     */
+    private AttributeMapping[] getProjectedAttributes(Query query, QueryBuilder builder) {
+        EntityMapping mapping = mappings.getMapping(builder.getEntityClass());
+        List<AttributeMapping> projected = new ArrayList<>();
+        for (Projection projection : query.getProjections()) {
+            AttributeMapping attribute = mapping.getAttribute(((PropertyProjection) projection).getName());
+            if (attribute != null && attribute.getType() != AttributeMapping.Type.EMBEDDED
+                    && attribute.getType() != AttributeMapping.Type.RELATION) {
+                projected.add(attribute);
+            }
+        }
+        return projected.toArray(new AttributeMapping[projected.size()]);
+    }
+
+    /*
+     * projection results hold index values only, entities are populated
+     * with the projected attributes and their relations are never loaded.
+     */
+    private Object toProjectionResult(Entity entity, QueryBuilder builder, AttributeMapping[] projected) {
+        logger.debug(entity.toString());
+        try {
+            EntityMapping mapping = mappings.getMapping(builder.getEntityClass());
+            Object instance = mapping.newInstance();
+            initializeID(entity, mapping, instance);
+            for (AttributeMapping attribute : projected) {
+                initializeAttribute(entity, instance, attribute);
+            }
+            if (!builder.holdRelationships()) {
+                return instance;
+            }
+            return new EnhanceEntity(instance, entity.getKey().getName(), null);
+        } catch (InstantiationException e) {
+            throw new KunderaException(e);
+        }
+    }
+
+    private FetchOptions getFetchOptions(int limit) {
         logger.info("set query result limit to: " + limit);
-        return datastore.prepare(query).asList(FetchOptions.Builder.withLimit(limit));
+        FetchOptions fetchOptions = FetchOptions.Builder.withLimit(limit);
+        if (clientConfig.getQueryChunkSize() != null) {
+            fetchOptions.chunkSize(clientConfig.getQueryChunkSize());
+        }
+        if (clientConfig.getQueryPrefetchSize() != null) {
+            fetchOptions.prefetchSize(clientConfig.getQueryPrefetchSize());
+        }
+        return fetchOptions;
+    }
+
+    private List<Entity> getQueryResults(Query query) {
+        joinPendingWrites();
+        return datastore.prepare(query).asList(FetchOptions.Builder.withDefaults());
     }
 }
@@ -10,15 +10,33 @@ import com.impetus.kundera.loader.ClientLoaderException;
 import com.impetus.kundera.loader.GenericClientFactory;
 import com.impetus.kundera.metadata.model.PersistenceUnitMetadata;
 import com.impetus.kundera.persistence.EntityReader;
+import it.polimi.kundera.client.datastore.cache.EntityCache;
+import it.polimi.kundera.client.datastore.cache.LocalEntityCache;
+import it.polimi.kundera.client.datastore.cache.MemcacheEntityCache;
+import it.polimi.kundera.client.datastore.config.DatastoreClientConfig;
+import it.polimi.kundera.client.datastore.config.DatastoreClientConfig.JoinTableKeys;
 import it.polimi.kundera.client.datastore.config.DatastoreConstants;
 import it.polimi.kundera.client.datastore.config.DatastorePropertyReader;
 import it.polimi.kundera.client.datastore.config.DatastorePropertyReader.DatastoreSchemaMetadata;
+import it.polimi.kundera.client.datastore.mapping.MappingRegistry;
+import it.polimi.kundera.client.datastore.query.CursorCache;
+import it.polimi.kundera.client.datastore.query.FanOutQuery;
+import it.polimi.kundera.client.datastore.query.QueryPlanCache;
+import it.polimi.kundera.client.datastore.query.QueryResultCache;
+import it.polimi.kundera.client.datastore.serializer.BlobCodec;
+import it.polimi.kundera.client.datastore.serializer.BlobSerializer;
+import it.polimi.kundera.client.datastore.serializer.CompactSerializer;
+import it.polimi.kundera.client.datastore.serializer.JavaSerializer;
 import it.polimi.kundera.client.datastore.schemamanager.DatastoreSchemaManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * Used by Kundera to instantiate the Client.
@@ -33,11 +51,31 @@ public class DatastoreClientFactory extends GenericClientFactory {
     private SchemaManager schemaManager;
     private RemoteApiOptions options;
     private DatastoreService datastore;
+    private AsyncDatastoreService asyncDatastore;
+    private DatastoreClientConfig clientConfig;
+    private CursorCache cursorCache;
+    private MappingRegistry mappings;
+    private BlobCodec codec;
+    private IdAllocator idAllocator;
+    private EntityCache entityCache;
+    private QueryResultCache queryResultCache;
+    private QueryPlanCache queryPlans;
+    private FanOutQuery fanOut;
 
     @Override
     public void initialize(Map<String, Object> puProperties) {
         datastore = null;
+        asyncDatastore = null;
         options = null;
+        clientConfig = null;
+        cursorCache = null;
+        mappings = null;
+        codec = null;
+        idAllocator = null;
+        entityCache = null;
+        queryResultCache = null;
+        queryPlans = null;
+        fanOut = null;
         reader = new DatastoreEntityReader(kunderaMetadata);
         initializePropertyReader();
         setExternalProperties(puProperties);
@@ -76,13 +114,36 @@ public class DatastoreClientFactory extends GenericClientFactory {
         }
         DatastoreServiceConfig config = buildConfiguration();
         datastore = DatastoreServiceFactory.getDatastoreService(config);
+        clientConfig = buildClientConfiguration();
+        if (clientConfig.isAsync()) {
+            asyncDatastore = DatastoreServiceFactory.getAsyncDatastoreService(config);
+        }
+        if (clientConfig.getIdAllocationRange() > 0) {
+            /* shared among clients, ranges are prefetched through the async service */
+            idAllocator = new IdAllocator(datastore, DatastoreServiceFactory.getAsyncDatastoreService(config), clientConfig.getIdAllocationRange());
+        }
+        if (clientConfig.getQueryFanOut() > 1) {
+            fanOut = new FanOutQuery(DatastoreServiceFactory.getAsyncDatastoreService(config), clientConfig.getQueryFanOut());
+        }
+        if (clientConfig.getCursorCacheSize() > 0) {
+            cursorCache = new CursorCache(clientConfig.getCursorCacheSize(), clientConfig.getCursorCacheExpiration());
+        }
+        if (clientConfig.getQueryCacheSize() > 0) {
+            queryResultCache = new QueryResultCache(clientConfig.getQueryCacheSize(), clientConfig.getQueryCacheExpiration());
+        }
+        entityCache = buildEntityCache();
+        codec = new BlobCodec(buildSerializer(), clientConfig.getCompressionLevel(), clientConfig.getCompressionThreshold());
+        /* entity mappings are built once, not for each persisted or loaded entity */
+        mappings = new MappingRegistry(kunderaMetadata);
+        mappings.initialize(pu);
+        queryPlans = new QueryPlanCache();
 
         return datastore;
     }
 
     @Override
     protected Client instantiateClient(String persistenceUnit) {
-        return new DatastoreClient(kunderaMetadata, externalProperties, persistenceUnit, clientMetadata, indexManager, reader, datastore, options);
+        return new DatastoreClient(kunderaMetadata, externalProperties, persistenceUnit, clientMetadata, indexManager, reader, datastore, asyncDatastore, options, clientConfig, cursorCache, mappings, codec, idAllocator, entityCache, queryResultCache, queryPlans, fanOut);
     }
 
     @Override
@@ -96,7 +157,17 @@ public class DatastoreClientFactory extends GenericClientFactory {
             indexManager.close();
         }
         datastore = null;
+        asyncDatastore = null;
         options = null;
+        clientConfig = null;
+        cursorCache = null;
+        mappings = null;
+        codec = null;
+        idAllocator = null;
+        entityCache = null;
+        queryResultCache = null;
+        queryPlans = null;
+        fanOut = null;
         schemaManager = null;
         externalProperties = null;
     }
@@ -167,6 +238,201 @@ public class DatastoreClientFactory extends GenericClientFactory {
         return config;
     }
 
+    private DatastoreClientConfig buildClientConfiguration() {
+        Properties properties = getClientSpecificProperties();
+        DatastoreClientConfig config = new DatastoreClientConfig();
+        if (properties == null) {
+            return config;
+        }
+
+        logger.info("Initialize client with:");
+        JoinTableKeys joinTableKeys = parseJoinTableKeys(properties);
+        if (joinTableKeys != null) {
+            logger.info("\tjoin table keys [" + joinTableKeys.name() + "]");
+            config.joinTableKeys(joinTableKeys);
+        }
+        Boolean async = parseBoolean(properties, DatastoreConstants.ASYNC);
+        if (async != null) {
+            logger.info("\tasync [" + async + "]");
+            config.async(async);
+        }
+        Boolean nativeCollections = parseBoolean(properties, DatastoreConstants.NATIVE_COLLECTIONS);
+        if (nativeCollections != null) {
+            logger.info("\tnative collections [" + nativeCollections + "]");
+            config.nativeCollections(nativeCollections);
+        }
+        Integer compressionLevel = parseInteger(properties, DatastoreConstants.COMPRESSION_LEVEL);
+        if (compressionLevel != null) {
+            if (compressionLevel < 0 || compressionLevel > 9) {
+                throw new ClientLoaderException("Invalid " + DatastoreConstants.COMPRESSION_LEVEL + " " + compressionLevel + ", must be between 0 and 9");
+            }
+            logger.info("\tcompression level [" + compressionLevel + "]");
+            config.compressionLevel(compressionLevel);
+        }
+        Integer compressionThreshold = parseInteger(properties, DatastoreConstants.COMPRESSION_THRESHOLD);
+        if (compressionThreshold != null) {
+            logger.info("\tcompression threshold [" + compressionThreshold + "]");
+            config.compressionThreshold(compressionThreshold);
+        }
+        Integer chunkSize = parseInteger(properties, DatastoreConstants.CHUNK_SIZE);
+        if (chunkSize != null) {
+            if (chunkSize < 0 || chunkSize > DatastoreConstants.MAX_BLOB_BYTES) {
+                throw new ClientLoaderException("Invalid " + DatastoreConstants.CHUNK_SIZE + " " + chunkSize + ", must be between 0 and " + DatastoreConstants.MAX_BLOB_BYTES);
+            }
+            logger.info("\tchunk size [" + chunkSize + "]");
+            config.chunkSize(chunkSize);
+        }
+        Boolean lazyBlobs = parseBoolean(properties, DatastoreConstants.LAZY_BLOBS);
+        if (lazyBlobs != null) {
+            logger.info("\tlazy blobs [" + lazyBlobs + "]");
+            config.lazyBlobs(lazyBlobs);
+        }
+        Integer idAllocationRange = parseInteger(properties, DatastoreConstants.ID_ALLOCATION_RANGE);
+        if (idAllocationRange != null) {
+            if (idAllocationRange < 0) {
+                throw new ClientLoaderException("Invalid " + DatastoreConstants.ID_ALLOCATION_RANGE + " " + idAllocationRange + ", must not be negative");
+            }
+            logger.info("\tid allocation range [" + idAllocationRange + "]");
+            config.idAllocationRange(idAllocationRange);
+        }
+        Set<String> cacheKinds = parseList(properties, DatastoreConstants.CACHE_KINDS);
+        if (!cacheKinds.isEmpty()) {
+            logger.info("\tcache kinds " + cacheKinds);
+            config.cacheKinds(cacheKinds);
+        }
+        Integer cacheExpiration = parseInteger(properties, DatastoreConstants.CACHE_EXPIRATION);
+        if (cacheExpiration != null) {
+            logger.info("\tcache expiration [" + cacheExpiration + "]");
+            config.cacheExpiration(cacheExpiration);
+        }
+        Integer cacheSize = parsePositiveInteger(properties, DatastoreConstants.CACHE_SIZE);
+        if (cacheSize != null) {
+            logger.info("\tcache size [" + cacheSize + "]");
+            config.cacheSize(cacheSize);
+        }
+        Boolean sessionCache = parseBoolean(properties, DatastoreConstants.SESSION_CACHE);
+        if (sessionCache != null) {
+            logger.info("\tsession cache [" + sessionCache + "]");
+            config.sessionCache(sessionCache);
+        }
+        Integer relationBatchThreshold = parseInteger(properties, DatastoreConstants.RELATION_BATCH_THRESHOLD);
+        if (relationBatchThreshold != null) {
+            logger.info("\trelation batch threshold [" + relationBatchThreshold + "]");
+            config.relationBatchThreshold(relationBatchThreshold);
+        }
+        Integer cursorCacheSize = parseInteger(properties, DatastoreConstants.CURSOR_CACHE_SIZE);
+        if (cursorCacheSize != null) {
+            logger.info("\tcursor cache size [" + cursorCacheSize + "]");
+            config.cursorCacheSize(cursorCacheSize);
+        }
+        Integer cursorCacheExpiration = parseInteger(properties, DatastoreConstants.CURSOR_CACHE_EXPIRATION);
+        if (cursorCacheExpiration != null) {
+            logger.info("\tcursor cache expiration [" + cursorCacheExpiration + "]");
+            config.cursorCacheExpiration(cursorCacheExpiration);
+        }
+        Integer queryCacheSize = parseInteger(properties, DatastoreConstants.QUERY_CACHE_SIZE);
+        if (queryCacheSize != null) {
+            logger.info("\tquery cache size [" + queryCacheSize + "]");
+            config.queryCacheSize(queryCacheSize);
+        }
+        Integer queryCacheExpiration = parseInteger(properties, DatastoreConstants.QUERY_CACHE_EXPIRATION);
+        if (queryCacheExpiration != null) {
+            logger.info("\tquery cache expiration [" + queryCacheExpiration + "]");
+            config.queryCacheExpiration(queryCacheExpiration);
+        }
+        Integer queryFanOut = parseInteger(properties, DatastoreConstants.QUERY_FAN_OUT);
+        if (queryFanOut != null) {
+            logger.info("\tquery fan out [" + queryFanOut + "]");
+            config.queryFanOut(queryFanOut);
+        }
+        Integer queryChunkSize = parsePositiveInteger(properties, DatastoreConstants.QUERY_CHUNK_SIZE);
+        if (queryChunkSize != null) {
+            logger.info("\tquery chunk size [" + queryChunkSize + "]");
+            config.queryChunkSize(queryChunkSize);
+        }
+        Integer queryPrefetchSize = parsePositiveInteger(properties, DatastoreConstants.QUERY_PREFETCH_SIZE);
+        if (queryPrefetchSize != null) {
+            logger.info("\tquery prefetch size [" + queryPrefetchSize + "]");
+            config.queryPrefetchSize(queryPrefetchSize);
+        }
+        return config;
+    }
+
+    /*
+     * serializer can be either "java", "compact" or
+     * the fully qualified name of a BlobSerializer implementation.
+     */
+    private BlobSerializer buildSerializer() {
+        Properties properties = getClientSpecificProperties();
+        String serializer = properties != null ? (String) properties.get(DatastoreConstants.SERIALIZER) : null;
+        if (serializer == null || serializer.isEmpty() || "java".equalsIgnoreCase(serializer.trim())) {
+            return new JavaSerializer();
+        }
+        logger.info("\tserializer [" + serializer + "]");
+        if ("compact".equalsIgnoreCase(serializer.trim())) {
+            return new CompactSerializer(parseClasses(properties, DatastoreConstants.SERIALIZER_CLASSES));
+        }
+        try {
+            Class<?> serializerClass = Class.forName(serializer.trim());
+            return (BlobSerializer) serializerClass.newInstance();
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | ClassCastException e) {
+            throw new ClientLoaderException("Invalid serializer " + serializer + ": ", e);
+        }
+    }
+
+    private List<Class<?>> parseClasses(Properties properties, String property) {
+        List<Class<?>> classes = new ArrayList<>();
+        for (String className : parseList(properties, property)) {
+            try {
+                classes.add(Class.forName(className));
+            } catch (ClassNotFoundException e) {
+                throw new ClientLoaderException("Invalid " + property + " " + className + ": ", e);
+            }
+        }
+        return classes;
+    }
+
+    /*
+     * cache can be either "none", "memcache", "local" or
+     * the fully qualified name of an EntityCache implementation.
+     */
+    private EntityCache buildEntityCache() {
+        Properties properties = getClientSpecificProperties();
+        String cache = properties != null ? (String) properties.get(DatastoreConstants.CACHE) : null;
+        if (cache == null || cache.isEmpty() || "none".equalsIgnoreCase(cache.trim())) {
+            return null;
+        }
+        logger.info("\tentity cache [" + cache + "]");
+        EntityCache entityCache;
+        if ("memcache".equalsIgnoreCase(cache.trim())) {
+            entityCache = new MemcacheEntityCache();
+        } else if ("local".equalsIgnoreCase(cache.trim())) {
+            entityCache = new LocalEntityCache();
+        } else {
+            try {
+                entityCache = (EntityCache) Class.forName(cache.trim()).newInstance();
+            } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | ClassCastException e) {
+                throw new ClientLoaderException("Invalid entity cache " + cache + ": ", e);
+            }
+        }
+        entityCache.initialize(clientConfig.getCacheExpiration(), clientConfig.getCacheSize());
+        return entityCache;
+    }
+
+    /* ordered set of the comma separated values of a property */
+    private Set<String> parseList(Properties properties, String property) {
+        Set<String> values = new LinkedHashSet<>();
+        String value = (String) properties.get(property);
+        if (value != null && !value.isEmpty()) {
+            for (String item : value.split(",")) {
+                if (!item.trim().isEmpty()) {
+                    values.add(item.trim());
+                }
+            }
+        }
+        return values;
+    }
+
     private Double parseDeadline(Properties properties) {
         String deadline = (String) properties.get(DatastoreConstants.DEADLINE);
         if (deadline != null && !deadline.isEmpty()) {
@@ -204,6 +470,49 @@ public class DatastoreClientFactory extends GenericClientFactory {
         return null;
     }
 
+    private Integer parseInteger(Properties properties, String property) {
+        String value = (String) properties.get(property);
+        if (value != null && !value.isEmpty()) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                throw new ClientLoaderException("Invalid " + property + " " + value + ": ", e);
+            }
+        }
+        return null;
+    }
+
+    private Integer parsePositiveInteger(Properties properties, String property) {
+        Integer value = parseInteger(properties, property);
+        if (value != null && value <= 0) {
+            throw new ClientLoaderException("Invalid " + property + " " + value + ", must be greater than zero");
+        }
+        return value;
+    }
+
+    private Boolean parseBoolean(Properties properties, String property) {
+        String value = (String) properties.get(property);
+        if (value != null && !value.isEmpty()) {
+            if ("true".equalsIgnoreCase(value.trim()) || "false".equalsIgnoreCase(value.trim())) {
+                return Boolean.valueOf(value.trim());
+            }
+            throw new ClientLoaderException("Invalid " + property + " " + value + ", must be either true or false");
+        }
+        return null;
+    }
+
+    private JoinTableKeys parseJoinTableKeys(Properties properties) {
+        String joinTableKeys = (String) properties.get(DatastoreConstants.JOIN_TABLE_KEYS);
+        if (joinTableKeys != null && !joinTableKeys.isEmpty()) {
+            try {
+                return JoinTableKeys.valueOf(joinTableKeys.toUpperCase());
+            } catch (IllegalArgumentException | NullPointerException e) {
+                throw new ClientLoaderException("Invalid join table keys " + joinTableKeys + ": ", e);
+            }
+        }
+        return null;
+    }
+
     private Properties getClientSpecificProperties() {
         DatastoreSchemaMetadata metadata = DatastorePropertyReader.dsm;
         ClientProperties clientProperties = metadata != null ? metadata.getClientProperties() : null;
@@ -1,13 +1,11 @@
 package it.polimi.kundera.client.datastore;
 
-import com.google.appengine.api.datastore.Blob;
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.*;
 import com.impetus.kundera.KunderaException;
 import com.impetus.kundera.metadata.model.EntityMetadata;
 
-import java.io.*;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * Utils method for common operation with Datastore api.
@@ -94,37 +92,47 @@ public class DatastoreUtils {
     }
 
     /**
-     * Serialize an object to datastore {@link com.google.appengine.api.datastore.Blob}.
+     * Roughly estimate the serialized size of a datastore {@link com.google.appengine.api.datastore.Entity}.
+     * <p/>
+     * Only variable length values (strings, blobs, texts and embedded entities) are
+     * measured, any other value is accounted with a fixed size.
      *
-     * @param obj object to be serialized.
+     * @param container an {@link com.google.appengine.api.datastore.Entity} or
+     *                  an {@link com.google.appengine.api.datastore.EmbeddedEntity}.
      *
-     * @return an instance of {@link com.google.appengine.api.datastore.Blob} of the given object.
+     * @return estimated size in bytes.
      *
-     * @throws IOException
-     * @see com.google.appengine.api.datastore.Blob
+     * @see com.google.appengine.api.datastore.PropertyContainer
      */
-    public static Blob serialize(Object obj) throws IOException {
-        ByteArrayOutputStream b = new ByteArrayOutputStream();
-        ObjectOutputStream o = new ObjectOutputStream(b);
-        o.writeObject(obj);
-        return new Blob(b.toByteArray());
+    public static long estimateSize(PropertyContainer container) {
+        long size = 0;
+        if (container instanceof Entity) {
+            size += ((Entity) container).getKey().toString().length();
+        }
+        for (Map.Entry<String, Object> property : container.getProperties().entrySet()) {
+            size += property.getKey().length() + estimateValueSize(property.getValue());
+        }
+        return size;
     }
 
-    /**
-     * Deserialize a datastore {@link com.google.appengine.api.datastore.Blob}.
-     *
-     * @param blob a datastore {@link com.google.appengine.api.datastore.Blob}.
-     *
-     * @return the deserialized object.
-     *
-     * @throws IOException
-     * @throws ClassNotFoundException
-     * @see com.google.appengine.api.datastore.Blob
-     */
-    public static Object deserialize(Blob blob) throws IOException, ClassNotFoundException {
-        byte[] bytes = blob.getBytes();
-        ByteArrayInputStream b = new ByteArrayInputStream(bytes);
-        ObjectInputStream o = new ObjectInputStream(b);
-        return o.readObject();
+    private static long estimateValueSize(Object value) {
+        if (value instanceof String) {
+            return ((String) value).length();
+        } else if (value instanceof Blob) {
+            return ((Blob) value).getBytes().length;
+        } else if (value instanceof ShortBlob) {
+            return ((ShortBlob) value).getBytes().length;
+        } else if (value instanceof Text) {
+            return ((Text) value).getValue().length();
+        } else if (value instanceof EmbeddedEntity) {
+            return estimateSize((EmbeddedEntity) value);
+        } else if (value instanceof Collection) {
+            long size = 0;
+            for (Object element : (Collection) value) {
+                size += estimateValueSize(element);
+            }
+            return size;
+        }
+        return 8;
     }
 }
@@ -0,0 +1,110 @@
+package it.polimi.kundera.client.datastore;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.KeyRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Hands out ids reserved through datastore id allocation, one sequence per kind.
+ * <p/>
+ * Ids are reserved in ranges, when half of the current range of a kind has been used
+ * the next one is requested asynchronously so that generation seldom waits for datastore.
+ * <p/>
+ * Ids of a kind are allocated in that kind, so they never collide with the ids datastore
+ * assigns to entities of the same kind.
+ *
+ * @author Fabio Arcidiacono.
+ * @see com.google.appengine.api.datastore.DatastoreService#allocateIds(String, long)
+ */
+class IdAllocator {
+
+    /*
+     * kind of the ids handed out by AutoGenerator#generate(), that does not
+     * know the kind of the entity, they are unique among all the kinds.
+     */
+    static final String SEQUENCE_KIND = "DATASTORE_SEQUENCE";
+
+    private static final Logger logger = LoggerFactory.getLogger(IdAllocator.class);
+    private final DatastoreService datastore;
+    private final AsyncDatastoreService asyncDatastore;
+    private final int rangeSize;
+    private final ConcurrentMap<String, Sequence> sequences = new ConcurrentHashMap<>();
+
+    IdAllocator(DatastoreService datastore, AsyncDatastoreService asyncDatastore, int rangeSize) {
+        this.datastore = datastore;
+        this.asyncDatastore = asyncDatastore;
+        this.rangeSize = rangeSize;
+    }
+
+    /*
+     * datastore is never called while holding the lock of the sequence, threads that
+     * find the sequence exhausted allocate a range each and the spare ones are kept.
+     */
+    long nextId(String kind) {
+        Sequence sequence = sequences.get(kind);
+        if (sequence == null) {
+            sequence = new Sequence();
+            Sequence existing = sequences.putIfAbsent(kind, sequence);
+            if (existing != null) {
+                sequence = existing;
+            }
+        }
+        while (true) {
+            Future<KeyRange> pending;
+            synchronized (sequence) {
+                if (sequence.next > sequence.end && !sequence.ready.isEmpty()) {
+                    sequence.use(sequence.ready.poll());
+                }
+                if (sequence.next <= sequence.end) {
+                    if (sequence.nextRange == null && sequence.ready.isEmpty() && sequence.end - sequence.next < rangeSize / 2) {
+                        logger.debug("prefetch range of " + rangeSize + " ids for kind " + kind);
+                        sequence.nextRange = asyncDatastore.allocateIds(kind, rangeSize);
+                    }
+                    return sequence.next++;
+                }
+                pending = sequence.nextRange;
+                sequence.nextRange = null;
+            }
+            KeyRange range = takeRange(kind, pending);
+            synchronized (sequence) {
+                sequence.ready.add(range);
+            }
+        }
+    }
+
+    private KeyRange takeRange(String kind, Future<KeyRange> pending) {
+        if (pending != null) {
+            try {
+                return pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                logger.warn("Prefetch of ids failed, allocating synchronously: " + e.getCause());
+            }
+        }
+        logger.debug("allocate range of " + rangeSize + " ids for kind " + kind);
+        return datastore.allocateIds(kind, rangeSize);
+    }
+
+    private static class Sequence {
+
+        private long next;
+        private long end = -1;
+        private Future<KeyRange> nextRange;
+        private final Queue<KeyRange> ready = new ArrayDeque<>();
+
+        private void use(KeyRange range) {
+            next = range.getStart().getId();
+            end = range.getEnd().getId();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package it.polimi.kundera.client.datastore.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an attribute that is never used to filter or sort queries,
+ * so that it is stored as an unindexed property and no index rows are written for it.
+ * <p/>
+ * Serialized values and embedded entities are always unindexed,
+ * relations and discriminator columns are always indexed.
+ *
+ * @author Fabio Arcidiacono.
+ * @see com.google.appengine.api.datastore.PropertyContainer#setUnindexedProperty(String, Object)
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Unindexed {
+}
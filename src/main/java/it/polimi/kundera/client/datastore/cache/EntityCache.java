@@ -0,0 +1,50 @@
+package it.polimi.kundera.client.datastore.cache;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Second level cache of datastore entities, read through by the client
+ * and invalidated when the client writes or deletes an entity.
+ * <p/>
+ * Custom implementations must have a public no-arg constructor.
+ *
+ * @author Fabio Arcidiacono.
+ * @see it.polimi.kundera.client.datastore.cache.MemcacheEntityCache
+ * @see it.polimi.kundera.client.datastore.cache.LocalEntityCache
+ */
+public interface EntityCache {
+
+    /**
+     * Configure the cache.
+     *
+     * @param expiration seconds after which entries expire, zero for no expiration.
+     * @param maxSize    maximum number of entries, for caches that bound it.
+     */
+    void initialize(int expiration, int maxSize);
+
+    /**
+     * @param key the entity key.
+     *
+     * @return the cached entity, {@code null} if not cached.
+     */
+    Entity get(Key key);
+
+    /**
+     * @param keys the entity keys.
+     *
+     * @return the cached entities, missing ones are not in the map.
+     */
+    Map<Key, Entity> getAll(Collection<Key> keys);
+
+    void put(Entity entity);
+
+    void putAll(Collection<Entity> entities);
+
+    void evict(Key key);
+
+    void evictAll(Collection<Key> keys);
+}
@@ -0,0 +1,104 @@
+package it.polimi.kundera.client.datastore.cache;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-process {@link it.polimi.kundera.client.datastore.cache.EntityCache},
+ * bounded in size with least recently used eviction.
+ * <p/>
+ * Entries are not shared among application instances, so writes made by other
+ * instances are seen only once entries expire.
+ *
+ * @author Fabio Arcidiacono.
+ */
+public class LocalEntityCache implements EntityCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private Map<Key, CachedEntity> entries;
+    private long expirationMillis;
+
+    @Override
+    public synchronized void initialize(int expiration, final int maxSize) {
+        final int capacity = maxSize > 0 ? maxSize : DEFAULT_MAX_SIZE;
+        this.expirationMillis = expiration * 1000L;
+        this.entries = new LinkedHashMap<Key, CachedEntity>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedEntity> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    @Override
+    public synchronized Entity get(Key key) {
+        CachedEntity cached = entries.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.isExpired()) {
+            entries.remove(key);
+            return null;
+        }
+        /* a copy, so that callers cannot modify the cached entity */
+        return cached.entity.clone();
+    }
+
+    @Override
+    public synchronized Map<Key, Entity> getAll(Collection<Key> keys) {
+        Map<Key, Entity> entities = new HashMap<>();
+        for (Key key : keys) {
+            Entity entity = get(key);
+            if (entity != null) {
+                entities.put(key, entity);
+            }
+        }
+        return entities;
+    }
+
+    @Override
+    public synchronized void put(Entity entity) {
+        long expiresAt = expirationMillis > 0 ? System.currentTimeMillis() + expirationMillis : Long.MAX_VALUE;
+        entries.put(entity.getKey(), new CachedEntity(entity.clone(), expiresAt));
+    }
+
+    @Override
+    public synchronized void putAll(Collection<Entity> entities) {
+        for (Entity entity : entities) {
+            put(entity);
+        }
+    }
+
+    @Override
+    public synchronized void evict(Key key) {
+        entries.remove(key);
+    }
+
+    @Override
+    public synchronized void evictAll(Collection<Key> keys) {
+        for (Key key : keys) {
+            entries.remove(key);
+        }
+    }
+
+    private static class CachedEntity {
+
+        private final Entity entity;
+        private final long expiresAt;
+
+        private CachedEntity(Entity entity, long expiresAt) {
+            this.entity = entity;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() > expiresAt;
+        }
+    }
+}
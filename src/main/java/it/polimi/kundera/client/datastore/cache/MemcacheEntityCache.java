@@ -0,0 +1,70 @@
+package it.polimi.kundera.client.datastore.cache;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link it.polimi.kundera.client.datastore.cache.EntityCache} backed by GAE memcache,
+ * shared among all the instances of the application.
+ *
+ * @author Fabio Arcidiacono.
+ * @see com.google.appengine.api.memcache.MemcacheService
+ */
+public class MemcacheEntityCache implements EntityCache {
+
+    public static final String NAMESPACE = "kundera-datastore";
+
+    private MemcacheService memcache;
+    private Expiration expiration;
+
+    @Override
+    public void initialize(int expiration, int maxSize) {
+        this.memcache = MemcacheServiceFactory.getMemcacheService(NAMESPACE);
+        this.expiration = expiration > 0 ? Expiration.byDeltaSeconds(expiration) : null;
+    }
+
+    @Override
+    public Entity get(Key key) {
+        return (Entity) memcache.get(key);
+    }
+
+    @Override
+    public Map<Key, Entity> getAll(Collection<Key> keys) {
+        Map<Key, Entity> entities = new HashMap<>();
+        for (Map.Entry<Key, Object> entry : memcache.getAll(keys).entrySet()) {
+            entities.put(entry.getKey(), (Entity) entry.getValue());
+        }
+        return entities;
+    }
+
+    @Override
+    public void put(Entity entity) {
+        memcache.put(entity.getKey(), entity, expiration);
+    }
+
+    @Override
+    public void putAll(Collection<Entity> entities) {
+        Map<Key, Entity> values = new HashMap<>();
+        for (Entity entity : entities) {
+            values.put(entity.getKey(), entity);
+        }
+        memcache.putAll(values, expiration);
+    }
+
+    @Override
+    public void evict(Key key) {
+        memcache.delete(key);
+    }
+
+    @Override
+    public void evictAll(Collection<Key> keys) {
+        memcache.deleteAll(keys);
+    }
+}
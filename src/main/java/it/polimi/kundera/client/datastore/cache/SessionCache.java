@@ -0,0 +1,64 @@
+package it.polimi.kundera.client.datastore.cache;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Identity map of the entities read by a single client, i.e. by a single entity manager,
+ * including the keys known not to exist, so that repeated lookups do not reach datastore.
+ * <p/>
+ * Not thread safe, as the client owning it.
+ *
+ * @author Fabio Arcidiacono.
+ */
+public class SessionCache {
+
+    private final Map<Key, Entity> entities = new HashMap<>();
+    private final Set<Key> absent = new HashSet<>();
+
+    /**
+     * @param key the entity key.
+     *
+     * @return {@code true} if the key has been read, either found or not.
+     */
+    public boolean contains(Key key) {
+        return entities.containsKey(key) || absent.contains(key);
+    }
+
+    /**
+     * @param key the entity key.
+     *
+     * @return the entity read, {@code null} if the key is known to be absent or has not been read.
+     */
+    public Entity get(Key key) {
+        return entities.get(key);
+    }
+
+    public void put(Entity entity) {
+        absent.remove(entity.getKey());
+        entities.put(entity.getKey(), entity);
+    }
+
+    public void putAbsent(Key key) {
+        entities.remove(key);
+        absent.add(key);
+    }
+
+    public void evictAll(Collection<Key> keys) {
+        for (Key key : keys) {
+            entities.remove(key);
+            absent.remove(key);
+        }
+    }
+
+    public void clear() {
+        entities.clear();
+        absent.clear();
+    }
+}
@@ -0,0 +1,238 @@
+package it.polimi.kundera.client.datastore.config;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Client side settings read from datastore specific property file,
+ * complementary to {@link com.google.appengine.api.datastore.DatastoreServiceConfig}
+ * which holds the settings used to configure the datastore service itself.
+ *
+ * @author Fabio Arcidiacono.
+ * @see it.polimi.kundera.client.datastore.config.DatastoreConstants
+ */
+public class DatastoreClientConfig {
+
+    /**
+     * How the keys of join tables rows are generated.
+     */
+    public enum JoinTableKeys {
+        /** datastore generated ids. */
+        GENERATED,
+        /** key named after owner and child ids. */
+        DERIVED
+    }
+
+    private JoinTableKeys joinTableKeys = JoinTableKeys.GENERATED;
+    private int relationBatchThreshold = 100;
+    private boolean async = false;
+    private Integer queryChunkSize;
+    private Integer queryPrefetchSize;
+    private int cursorCacheSize = 0;
+    private int cursorCacheExpiration = 60;
+    private boolean nativeCollections = false;
+    private int compressionLevel = 0;
+    private int compressionThreshold = 1024;
+    private int chunkSize = 0;
+    private boolean lazyBlobs = false;
+    private int idAllocationRange = 0;
+    private Set<String> cacheKinds = Collections.emptySet();
+    private int cacheExpiration = 300;
+    private int cacheSize = 1000;
+    private boolean sessionCache = false;
+    private int queryCacheSize = 0;
+    private int queryCacheExpiration = 60;
+    private int queryFanOut = 0;
+
+    public JoinTableKeys getJoinTableKeys() {
+        return joinTableKeys;
+    }
+
+    public DatastoreClientConfig joinTableKeys(JoinTableKeys joinTableKeys) {
+        this.joinTableKeys = joinTableKeys;
+        return this;
+    }
+
+    public int getRelationBatchThreshold() {
+        return relationBatchThreshold;
+    }
+
+    public DatastoreClientConfig relationBatchThreshold(int relationBatchThreshold) {
+        this.relationBatchThreshold = relationBatchThreshold;
+        return this;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public DatastoreClientConfig async(boolean async) {
+        this.async = async;
+        return this;
+    }
+
+    public Integer getQueryChunkSize() {
+        return queryChunkSize;
+    }
+
+    public DatastoreClientConfig queryChunkSize(Integer queryChunkSize) {
+        this.queryChunkSize = queryChunkSize;
+        return this;
+    }
+
+    public Integer getQueryPrefetchSize() {
+        return queryPrefetchSize;
+    }
+
+    public DatastoreClientConfig queryPrefetchSize(Integer queryPrefetchSize) {
+        this.queryPrefetchSize = queryPrefetchSize;
+        return this;
+    }
+
+    public int getCursorCacheSize() {
+        return cursorCacheSize;
+    }
+
+    public DatastoreClientConfig cursorCacheSize(int cursorCacheSize) {
+        this.cursorCacheSize = cursorCacheSize;
+        return this;
+    }
+
+    public int getCursorCacheExpiration() {
+        return cursorCacheExpiration;
+    }
+
+    public DatastoreClientConfig cursorCacheExpiration(int cursorCacheExpiration) {
+        this.cursorCacheExpiration = cursorCacheExpiration;
+        return this;
+    }
+
+    public boolean isNativeCollections() {
+        return nativeCollections;
+    }
+
+    public DatastoreClientConfig nativeCollections(boolean nativeCollections) {
+        this.nativeCollections = nativeCollections;
+        return this;
+    }
+
+    /**
+     * @return deflate level of serialized values, zero if compression is disabled.
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public DatastoreClientConfig compressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public DatastoreClientConfig compressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+        return this;
+    }
+
+    /**
+     * @return maximum size of blobs kept inline and of each chunk, zero if chunked values are disabled.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public DatastoreClientConfig chunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public boolean isLazyBlobs() {
+        return lazyBlobs;
+    }
+
+    public DatastoreClientConfig lazyBlobs(boolean lazyBlobs) {
+        this.lazyBlobs = lazyBlobs;
+        return this;
+    }
+
+    /**
+     * @return number of ids reserved at once for auto-generated ids, zero to generate random UUIDs.
+     */
+    public int getIdAllocationRange() {
+        return idAllocationRange;
+    }
+
+    public DatastoreClientConfig idAllocationRange(int idAllocationRange) {
+        this.idAllocationRange = idAllocationRange;
+        return this;
+    }
+
+    /**
+     * @return kinds held in the entity cache, all the kinds if empty.
+     */
+    public Set<String> getCacheKinds() {
+        return cacheKinds;
+    }
+
+    public DatastoreClientConfig cacheKinds(Set<String> cacheKinds) {
+        this.cacheKinds = Collections.unmodifiableSet(cacheKinds);
+        return this;
+    }
+
+    public int getCacheExpiration() {
+        return cacheExpiration;
+    }
+
+    public DatastoreClientConfig cacheExpiration(int cacheExpiration) {
+        this.cacheExpiration = cacheExpiration;
+        return this;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public DatastoreClientConfig cacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+        return this;
+    }
+
+    public boolean isSessionCache() {
+        return sessionCache;
+    }
+
+    public DatastoreClientConfig sessionCache(boolean sessionCache) {
+        this.sessionCache = sessionCache;
+        return this;
+    }
+
+    public int getQueryCacheSize() {
+        return queryCacheSize;
+    }
+
+    public DatastoreClientConfig queryCacheSize(int queryCacheSize) {
+        this.queryCacheSize = queryCacheSize;
+        return this;
+    }
+
+    public int getQueryCacheExpiration() {
+        return queryCacheExpiration;
+    }
+
+    public DatastoreClientConfig queryCacheExpiration(int queryCacheExpiration) {
+        this.queryCacheExpiration = queryCacheExpiration;
+        return this;
+    }
+
+    public int getQueryFanOut() {
+        return queryFanOut;
+    }
+
+    public DatastoreClientConfig queryFanOut(int queryFanOut) {
+        this.queryFanOut = queryFanOut;
+        return this;
+    }
+}
@@ -12,6 +12,36 @@ public class DatastoreConstants {
     public static final String READ_POLICY = "datastore.policy.read";
     public static final String TRANSACTION_POLICY = "datastore.policy.transaction";
     public static final String DEADLINE = "datastore.deadline";
+    public static final String ASYNC = "datastore.async";
+    public static final String JOIN_TABLE_KEYS = "datastore.jointable.keys";
+    public static final String RELATION_BATCH_THRESHOLD = "datastore.relation.batch.threshold";
+    public static final String QUERY_CHUNK_SIZE = "datastore.query.chunk.size";
+    public static final String QUERY_PREFETCH_SIZE = "datastore.query.prefetch.size";
+    public static final String CURSOR_CACHE_SIZE = "datastore.query.cursor.cache";
+    public static final String CURSOR_CACHE_EXPIRATION = "datastore.query.cursor.cache.expiration";
+    public static final String NATIVE_COLLECTIONS = "datastore.collections.native";
+    public static final String SERIALIZER = "datastore.serializer";
+    public static final String SERIALIZER_CLASSES = "datastore.serializer.classes";
+    public static final String COMPRESSION_LEVEL = "datastore.compression.level";
+    public static final String COMPRESSION_THRESHOLD = "datastore.compression.threshold";
+    public static final String CHUNK_SIZE = "datastore.chunk.size";
+    public static final String LAZY_BLOBS = "datastore.blobs.lazy";
+    public static final String ID_ALLOCATION_RANGE = "datastore.id.allocation.range";
+    public static final String CACHE = "datastore.cache";
+    public static final String CACHE_KINDS = "datastore.cache.kinds";
+    public static final String CACHE_EXPIRATION = "datastore.cache.expiration";
+    public static final String CACHE_SIZE = "datastore.cache.size";
+    public static final String SESSION_CACHE = "datastore.session.cache";
+    public static final String QUERY_CACHE_SIZE = "datastore.query.cache";
+    public static final String QUERY_CACHE_EXPIRATION = "datastore.query.cache.expiration";
+    public static final String QUERY_FAN_OUT = "datastore.query.fanout";
+
+    /* datastore API limits */
+    public static final int MAX_BLOB_BYTES = 1000 * 1000;
+    public static final int MAX_PUT_ENTITIES = 500;
+    public static final long MAX_PUT_BYTES = 10 * 1024 * 1024;
+    public static final int MAX_GET_KEYS = 1000;
+    public static final int MAX_DELETE_KEYS = 500;
 
     private DatastoreConstants() {
     }
@@ -0,0 +1,148 @@
+package it.polimi.kundera.client.datastore.mapping;
+
+import com.impetus.kundera.property.accessor.EnumAccessor;
+import it.polimi.kundera.client.datastore.annotations.Unindexed;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable description of how a single attribute is mapped
+ * to a datastore property.
+ *
+ * @author Fabio Arcidiacono.
+ * @see it.polimi.kundera.client.datastore.mapping.EntityMapping
+ */
+public final class AttributeMapping {
+
+    /**
+     * How the attribute value is stored.
+     */
+    public enum Type {
+        /** stored as is. */
+        BASIC,
+        /** stored by name. */
+        ENUM,
+        /** Collection or Map, stored serialized. */
+        COLLECTION,
+        /** stored as an embedded entity. */
+        EMBEDDED,
+        /** stored as the key of the target entity. */
+        RELATION
+    }
+
+    private static final EnumAccessor ENUM_ACCESSOR = new EnumAccessor();
+
+    private final String columnName;
+    private final Field field;
+    private final FieldAccessor accessor;
+    private final Class<?> javaType;
+    private final Type type;
+    private final List<AttributeMapping> embeddedAttributes;
+    private final Instantiator embeddedInstantiator;
+    private final boolean filledByQuery;
+    private final boolean indexed;
+
+    AttributeMapping(String columnName, Field field, Class<?> javaType, Type type,
+                     List<AttributeMapping> embeddedAttributes, boolean filledByQuery) {
+        this.columnName = columnName;
+        this.field = field;
+        this.accessor = new FieldAccessor(field);
+        this.javaType = javaType;
+        this.type = type;
+        this.embeddedAttributes = Collections.unmodifiableList(new ArrayList<>(embeddedAttributes));
+        this.embeddedInstantiator = type == Type.EMBEDDED ? new Instantiator(javaType) : null;
+        this.filledByQuery = filledByQuery;
+        this.indexed = !field.isAnnotationPresent(Unindexed.class);
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    public Class<?> getJavaType() {
+        return javaType;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return unmodifiable list of the mappings of the attributes of the embeddable, empty if the attribute is not embedded.
+     */
+    public List<AttributeMapping> getEmbeddedAttributes() {
+        return embeddedAttributes;
+    }
+
+    /**
+     * @return {@code true} for ONE_TO_MANY and MANY_TO_MANY relations, which are
+     * not stored within the entity but filled by Kundera through a query.
+     */
+    public boolean isFilledByQuery() {
+        return filledByQuery;
+    }
+
+    /**
+     * @return {@code false} if the attribute is annotated with {@link it.polimi.kundera.client.datastore.annotations.Unindexed}.
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    public Object getValue(Object entity) {
+        return accessor.get(entity);
+    }
+
+    public void setValue(Object entity, Object value) {
+        accessor.set(entity, value);
+    }
+
+    /**
+     * @return a new instance of the embeddable class.
+     *
+     * @throws InstantiationException if the embeddable cannot be instantiated.
+     */
+    public Object newEmbeddedInstance() throws InstantiationException {
+        if (embeddedInstantiator == null) {
+            throw new InstantiationException("Attribute " + columnName + " is not embedded");
+        }
+        return embeddedInstantiator.newInstance();
+    }
+
+    /**
+     * Convert a field value to the value to be stored in datastore,
+     * serialization of collections is left to the client.
+     *
+     * @param value the field value.
+     *
+     * @return the value to be stored.
+     */
+    public Object toDatastore(Object value) {
+        if (value != null && type == Type.ENUM) {
+            return value.toString();
+        }
+        return value;
+    }
+
+    /**
+     * Convert a value read from datastore to the field value,
+     * deserialization of collections is left to the client.
+     *
+     * @param value the stored value.
+     *
+     * @return the field value.
+     */
+    public Object fromDatastore(Object value) {
+        if (value != null && type == Type.ENUM) {
+            return ENUM_ACCESSOR.fromString(javaType, value.toString());
+        }
+        return value;
+    }
+}
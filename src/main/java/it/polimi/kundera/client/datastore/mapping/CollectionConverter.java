@@ -0,0 +1,141 @@
+package it.polimi.kundera.client.datastore.mapping;
+
+import com.google.appengine.api.datastore.DataTypeUtils;
+import com.google.appengine.api.datastore.EmbeddedEntity;
+import com.impetus.kundera.KunderaException;
+
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Converts collections and maps to datastore native values and back.
+ * <p/>
+ * Collections whose elements are all of a native type are stored as
+ * multi-valued (list) properties, maps with {@link String} keys and
+ * native values are stored as {@link com.google.appengine.api.datastore.EmbeddedEntity}.
+ * Only types that datastore gives back unchanged are considered native,
+ * i.e. {@link String}, {@link Long}, {@link Double}, {@link Boolean} and {@link Date},
+ * other values, and strings too long to be stored as string properties, are left to serialization.
+ *
+ * @author Fabio Arcidiacono.
+ */
+public final class CollectionConverter {
+
+    private static final Set<Class<?>> NATIVE_TYPES = new HashSet<Class<?>>(Arrays.asList(
+            String.class, Long.class, Double.class, Boolean.class, Date.class));
+
+    private CollectionConverter() {
+    }
+
+    /**
+     * Convert a collection or a map to a datastore native value.
+     *
+     * @param value a {@link java.util.Collection} or a {@link java.util.Map}.
+     *
+     * @return the native value, {@code null} if the value cannot be stored natively.
+     */
+    public static Object toDatastore(Object value) {
+        if (value instanceof Collection) {
+            return toList((Collection<?>) value);
+        }
+        if (value instanceof Map) {
+            return toEmbeddedEntity((Map<?, ?>) value);
+        }
+        return null;
+    }
+
+    /*
+     * empty collections are not stored natively since datastore
+     * would give them back as null.
+     */
+    private static List<Object> toList(Collection<?> collection) {
+        if (collection.isEmpty()) {
+            return null;
+        }
+        for (Object element : collection) {
+            if (!isNative(element)) {
+                return null;
+            }
+        }
+        return new ArrayList<Object>(collection);
+    }
+
+    private static EmbeddedEntity toEmbeddedEntity(Map<?, ?> map) {
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!(entry.getKey() instanceof String) || !isNative(entry.getValue())) {
+                return null;
+            }
+        }
+        EmbeddedEntity embeddedEntity = new EmbeddedEntity();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            embeddedEntity.setProperty((String) entry.getKey(), entry.getValue());
+        }
+        return embeddedEntity;
+    }
+
+    private static boolean isNative(Object value) {
+        if (value instanceof String) {
+            return ((String) value).length() <= DataTypeUtils.MAX_STRING_PROPERTY_LENGTH;
+        }
+        return value != null && NATIVE_TYPES.contains(value.getClass());
+    }
+
+    /**
+     * Convert a datastore native value back to the collection or map type of a field.
+     *
+     * @param value     the stored value, either a {@link java.util.Collection} or an
+     *                  {@link com.google.appengine.api.datastore.EmbeddedEntity}.
+     * @param fieldType the declared type of the field.
+     *
+     * @return the field value, the given value itself if it is not a native collection or map.
+     */
+    public static Object fromDatastore(Object value, Class<?> fieldType) {
+        if (value instanceof Collection && Collection.class.isAssignableFrom(fieldType)) {
+            Collection<Object> collection = newCollection(fieldType);
+            collection.addAll((Collection<?>) value);
+            return collection;
+        }
+        if (value instanceof EmbeddedEntity && Map.class.isAssignableFrom(fieldType)) {
+            Map<String, Object> map = newMap(fieldType);
+            map.putAll(((EmbeddedEntity) value).getProperties());
+            return map;
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<Object> newCollection(Class<?> fieldType) {
+        if (fieldType.isInterface() || Modifier.isAbstract(fieldType.getModifiers())) {
+            if (SortedSet.class.isAssignableFrom(fieldType)) {
+                return new TreeSet<>();
+            }
+            if (Set.class.isAssignableFrom(fieldType)) {
+                return new LinkedHashSet<>();
+            }
+            if (Queue.class.isAssignableFrom(fieldType)) {
+                return new LinkedList<>();
+            }
+            return new ArrayList<>();
+        }
+        return (Collection<Object>) instantiate(fieldType);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> newMap(Class<?> fieldType) {
+        if (fieldType.isInterface() || Modifier.isAbstract(fieldType.getModifiers())) {
+            if (SortedMap.class.isAssignableFrom(fieldType)) {
+                return new TreeMap<>();
+            }
+            return new HashMap<>();
+        }
+        return (Map<String, Object>) instantiate(fieldType);
+    }
+
+    private static Object instantiate(Class<?> type) {
+        try {
+            return type.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new KunderaException("Some errors occurred instantiating " + type.getName() + ": ", e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package it.polimi.kundera.client.datastore.mapping;
+
+import com.google.appengine.api.datastore.Blob;
+import com.impetus.kundera.metadata.model.EntityMetadata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable description of how an entity class is mapped to a datastore entity,
+ * built once from Kundera metadata so that persist and load do not have to walk
+ * the metamodel for each entity.
+ *
+ * @author Fabio Arcidiacono.
+ * @see it.polimi.kundera.client.datastore.mapping.MappingRegistry
+ */
+public final class EntityMapping {
+
+    private final EntityMetadata entityMetadata;
+    private final Instantiator instantiator;
+    private final String kind;
+    private final String idColumn;
+    private final List<AttributeMapping> attributes;
+    private final Map<String, AttributeMapping> attributesByColumn = new HashMap<>();
+    private final String discriminatorColumn;
+    private final String discriminatorValue;
+    private final boolean storesBlobs;
+
+    EntityMapping(EntityMetadata entityMetadata, String idColumn, List<AttributeMapping> attributes,
+                  String discriminatorColumn, String discriminatorValue) {
+        this.entityMetadata = entityMetadata;
+        this.instantiator = new Instantiator(entityMetadata.getEntityClazz());
+        this.kind = entityMetadata.getTableName();
+        this.idColumn = idColumn;
+        this.attributes = Collections.unmodifiableList(new ArrayList<>(attributes));
+        boolean blobs = false;
+        for (AttributeMapping attribute : this.attributes) {
+            attributesByColumn.put(attribute.getColumnName(), attribute);
+            blobs |= attribute.getType() == AttributeMapping.Type.COLLECTION || Blob.class.equals(attribute.getJavaType());
+        }
+        this.storesBlobs = blobs;
+        this.discriminatorColumn = discriminatorColumn;
+        this.discriminatorValue = discriminatorValue;
+    }
+
+    public EntityMetadata getEntityMetadata() {
+        return entityMetadata;
+    }
+
+    public Class<?> getEntityClass() {
+        return entityMetadata.getEntityClazz();
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public String getIdColumn() {
+        return idColumn;
+    }
+
+    /**
+     * @return unmodifiable list of the mappings of all the attributes except the id one, which is stored within the key.
+     */
+    public List<AttributeMapping> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * @param column a column name.
+     *
+     * @return mapping of the attribute stored in the given column, {@code null} if
+     * the column is the id one or is not mapped.
+     */
+    public AttributeMapping getAttribute(String column) {
+        return attributesByColumn.get(column);
+    }
+
+    /**
+     * @return the discriminator column used for JPA inheritance, {@code null} if none.
+     */
+    public String getDiscriminatorColumn() {
+        return discriminatorColumn;
+    }
+
+    public String getDiscriminatorValue() {
+        return discriminatorValue;
+    }
+
+    /**
+     * @return {@code true} if some attribute may be stored as a blob, i.e. as chunks when large.
+     */
+    public boolean storesBlobs() {
+        return storesBlobs;
+    }
+
+    public Object newInstance() throws InstantiationException {
+        return instantiator.newInstance();
+    }
+}
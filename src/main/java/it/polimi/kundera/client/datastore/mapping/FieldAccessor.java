@@ -0,0 +1,50 @@
+package it.polimi.kundera.client.datastore.mapping;
+
+import com.impetus.kundera.KunderaException;
+
+import java.lang.reflect.Field;
+
+/**
+ * Cached-field accessor: reads and writes a field made accessible once, instead
+ * of looking it up and checking its accessibility on each access as
+ * {@link com.impetus.kundera.property.PropertyAccessorHelper} does.
+ * <p/>
+ * Access still goes through {@link java.lang.reflect.Field}, it is not a
+ * JIT-inlinable accessor such as a constant {@link java.lang.invoke.MethodHandle}
+ * or a generated accessor class.
+ *
+ * @author Fabio Arcidiacono.
+ * @see it.polimi.kundera.client.datastore.mapping.AttributeMapping
+ */
+final class FieldAccessor {
+
+    private final Field field;
+
+    FieldAccessor(Field field) {
+        this.field = field;
+        try {
+            field.setAccessible(true);
+        } catch (SecurityException e) {
+            throw new KunderaException("Unable to access field " + field.getName() + ": ", e);
+        }
+    }
+
+    Object get(Object target) {
+        if (target == null) {
+            return null;
+        }
+        try {
+            return field.get(target);
+        } catch (IllegalAccessException | IllegalArgumentException e) {
+            throw new KunderaException("Unable to read field " + field.getName() + ": ", e);
+        }
+    }
+
+    void set(Object target, Object value) {
+        try {
+            field.set(target, value);
+        } catch (IllegalAccessException | IllegalArgumentException e) {
+            throw new KunderaException("Unable to write field " + field.getName() + ": ", e);
+        }
+    }
+}
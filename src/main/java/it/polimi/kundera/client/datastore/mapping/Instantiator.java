@@ -0,0 +1,45 @@
+package it.polimi.kundera.client.datastore.mapping;
+
+import com.impetus.kundera.KunderaException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Creates instances through the no-arg constructor, resolved and made accessible
+ * once instead of being looked up by {@link Class#newInstance()} each time.
+ * <p/>
+ * Instances are still created reflectively through {@link java.lang.reflect.Constructor}.
+ *
+ * @author Fabio Arcidiacono.
+ * @see it.polimi.kundera.client.datastore.mapping.EntityMapping
+ */
+final class Instantiator {
+
+    private final Class<?> type;
+    private final Constructor<?> constructor;
+
+    Instantiator(Class<?> type) {
+        this.type = type;
+        Constructor<?> noArgConstructor = null;
+        try {
+            noArgConstructor = type.getDeclaredConstructor();
+            noArgConstructor.setAccessible(true);
+        } catch (NoSuchMethodException | SecurityException e) {
+            /* abstract classes or classes without no-arg constructor fail at instantiation, as before */
+            noArgConstructor = null;
+        }
+        this.constructor = noArgConstructor;
+    }
+
+    Object newInstance() throws InstantiationException {
+        if (constructor == null) {
+            throw new InstantiationException("Unable to instantiate " + type.getName() + ", a no-arg constructor is required");
+        }
+        try {
+            return constructor.newInstance();
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new KunderaException("Some errors occurred instantiating " + type.getName() + ": ", e);
+        }
+    }
+}
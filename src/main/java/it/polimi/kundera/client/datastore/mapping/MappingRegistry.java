@@ -0,0 +1,158 @@
+package it.polimi.kundera.client.datastore.mapping;
+
+import com.impetus.kundera.metadata.KunderaMetadataManager;
+import com.impetus.kundera.metadata.model.EntityMetadata;
+import com.impetus.kundera.metadata.model.MetamodelImpl;
+import com.impetus.kundera.metadata.model.Relation;
+import com.impetus.kundera.metadata.model.attributes.AbstractAttribute;
+import com.impetus.kundera.metadata.model.type.AbstractManagedType;
+import com.impetus.kundera.persistence.EntityManagerFactoryImpl.KunderaMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EmbeddableType;
+import javax.persistence.metamodel.EntityType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the {@link it.polimi.kundera.client.datastore.mapping.EntityMapping} of each entity class.
+ * <p/>
+ * Mappings are built when the client factory is initialized, mappings of classes
+ * not known at that time are built the first time they are requested.
+ *
+ * @author Fabio Arcidiacono.
+ * @see it.polimi.kundera.client.datastore.DatastoreClientFactory
+ */
+public class MappingRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappingRegistry.class);
+
+    private final KunderaMetadata kunderaMetadata;
+    private final ConcurrentMap<Class<?>, EntityMapping> mappings = new ConcurrentHashMap<>();
+    private final Set<String> blobKinds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public MappingRegistry(KunderaMetadata kunderaMetadata) {
+        this.kunderaMetadata = kunderaMetadata;
+    }
+
+    /**
+     * Build the mappings of all the entities of a persistence unit.
+     *
+     * @param persistenceUnit the persistence unit name.
+     */
+    public void initialize(String persistenceUnit) {
+        MetamodelImpl metamodel = KunderaMetadataManager.getMetamodel(kunderaMetadata, persistenceUnit);
+        if (metamodel == null || metamodel.getEntityMetadataMap() == null) {
+            return;
+        }
+        for (EntityMetadata entityMetadata : metamodel.getEntityMetadataMap().values()) {
+            Class<?> entityClass = entityMetadata.getEntityClazz();
+            register(entityClass, build(entityMetadata, metamodel));
+        }
+        logger.debug("built mappings for " + mappings.size() + " entities");
+    }
+
+    /**
+     * Retrieve the mapping of an entity class, building it if not yet known.
+     *
+     * @param entityClass the entity class.
+     *
+     * @return the {@link it.polimi.kundera.client.datastore.mapping.EntityMapping} of the class.
+     */
+    public EntityMapping getMapping(Class<?> entityClass) {
+        EntityMapping mapping = mappings.get(entityClass);
+        if (mapping == null) {
+            EntityMetadata entityMetadata = KunderaMetadataManager.getEntityMetadata(kunderaMetadata, entityClass);
+            MetamodelImpl metamodel = KunderaMetadataManager.getMetamodel(kunderaMetadata, entityMetadata.getPersistenceUnit());
+            mapping = register(entityClass, build(entityMetadata, metamodel));
+        }
+        return mapping;
+    }
+
+    /**
+     * @param kind a datastore kind.
+     *
+     * @return {@code true} if some entity class stored in the kind may hold blobs,
+     * {@code false} for kinds with no blob attribute and for kinds not mapped to
+     * entity classes, such as join tables.
+     */
+    public boolean storesBlobs(String kind) {
+        return blobKinds.contains(kind);
+    }
+
+    private EntityMapping register(Class<?> entityClass, EntityMapping mapping) {
+        EntityMapping existing = mappings.putIfAbsent(entityClass, mapping);
+        if (existing != null) {
+            return existing;
+        }
+        if (mapping.storesBlobs()) {
+            blobKinds.add(mapping.getKind());
+        }
+        return mapping;
+    }
+
+    private EntityMapping build(EntityMetadata entityMetadata, MetamodelImpl metamodel) {
+        EntityType entityType = metamodel.entity(entityMetadata.getEntityClazz());
+        String idColumn = ((AbstractAttribute) entityMetadata.getIdAttribute()).getJPAColumnName();
+
+        List<AttributeMapping> attributes = new ArrayList<>();
+        for (Object obj : entityType.getAttributes()) {
+            Attribute attribute = (Attribute) obj;
+            String columnName = ((AbstractAttribute) attribute).getJPAColumnName();
+            /* id is stored within the Key */
+            if (columnName.equals(idColumn)) {
+                continue;
+            }
+            if (attribute.isAssociation()) {
+                attributes.add(buildRelation(entityMetadata, attribute));
+            } else if (metamodel.isEmbeddable(((AbstractAttribute) attribute).getBindableJavaType())) {
+                attributes.add(buildEmbedded(attribute, metamodel));
+            } else {
+                attributes.add(buildAttribute(attribute));
+            }
+        }
+
+        AbstractManagedType managedType = (AbstractManagedType) entityType;
+        return new EntityMapping(entityMetadata, idColumn, attributes,
+                managedType.getDiscriminatorColumn(), managedType.getDiscriminatorValue());
+    }
+
+    private AttributeMapping buildAttribute(Attribute attribute) {
+        Field field = (Field) attribute.getJavaMember();
+        AttributeMapping.Type type = AttributeMapping.Type.BASIC;
+        if (Collection.class.isAssignableFrom(field.getType()) || Map.class.isAssignableFrom(field.getType())) {
+            type = AttributeMapping.Type.COLLECTION;
+        } else if (field.getType().isEnum()) {
+            type = AttributeMapping.Type.ENUM;
+        }
+        return new AttributeMapping(((AbstractAttribute) attribute).getJPAColumnName(), field,
+                ((AbstractAttribute) attribute).getBindableJavaType(), type, Collections.<AttributeMapping>emptyList(), false);
+    }
+
+    private AttributeMapping buildEmbedded(Attribute attribute, MetamodelImpl metamodel) {
+        Class<?> embeddableClass = ((AbstractAttribute) attribute).getBindableJavaType();
+        EmbeddableType embeddable = metamodel.embeddable(embeddableClass);
+        List<AttributeMapping> embeddedAttributes = new ArrayList<>();
+        for (Object embeddedAttribute : embeddable.getAttributes()) {
+            embeddedAttributes.add(buildAttribute((Attribute) embeddedAttribute));
+        }
+        return new AttributeMapping(((AbstractAttribute) attribute).getJPAColumnName(), (Field) attribute.getJavaMember(),
+                embeddableClass, AttributeMapping.Type.EMBEDDED, embeddedAttributes, false);
+    }
+
+    private AttributeMapping buildRelation(EntityMetadata entityMetadata, Attribute attribute) {
+        Relation.ForeignKey relationType = entityMetadata.getRelation(attribute.getName()).getType();
+        boolean filledByQuery = relationType.equals(Relation.ForeignKey.ONE_TO_MANY) || relationType.equals(Relation.ForeignKey.MANY_TO_MANY);
+        return new AttributeMapping(((AbstractAttribute) attribute).getJPAColumnName(), (Field) attribute.getJavaMember(),
+                ((AbstractAttribute) attribute).getBindableJavaType(), AttributeMapping.Type.RELATION, Collections.<AttributeMapping>emptyList(), filledByQuery);
+    }
+}
@@ -0,0 +1,129 @@
+package it.polimi.kundera.client.datastore.query;
+
+import com.google.appengine.api.datastore.Cursor;
+
+import java.util.*;
+
+/**
+ * Keeps the cursors reached by executed queries, keyed by query and offset,
+ * so that a query with an offset can start from the nearest known cursor
+ * instead of letting datastore skip all the preceding results.
+ * <p/>
+ * Cursors of a kind are discarded when entities of that kind are written by the client,
+ * writes made by other application instances shift the results and are seen only
+ * once cursors expire, until then resumed queries may skip or repeat results.
+ *
+ * @author Fabio Arcidiacono.
+ * @see com.google.appengine.api.datastore.Cursor
+ */
+public class CursorCache {
+
+    private static final int MAX_POSITIONS_PER_QUERY = 100;
+
+    private final Map<String, Positions> queries;
+    private final Map<String, Set<String>> queriesByKind = new HashMap<>();
+    private final long expirationMillis;
+
+    /**
+     * @param maxQueries maximum number of queries whose cursors are kept,
+     *                   least recently used ones are evicted first.
+     * @param expiration seconds after which cursors expire, 0 for no expiration.
+     */
+    public CursorCache(final int maxQueries, int expiration) {
+        this.expirationMillis = expiration * 1000L;
+        this.queries = new LinkedHashMap<String, Positions>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Positions> eldest) {
+                if (size() > maxQueries) {
+                    removeFromKind(eldest.getValue().kind, eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Store the cursor reached by a query at the given offset.
+     *
+     * @param kind   kind of the query.
+     * @param query  string representation of the query.
+     * @param offset offset of the position.
+     * @param cursor cursor at the given offset.
+     */
+    public synchronized void put(String kind, String query, int offset, Cursor cursor) {
+        Positions positions = queries.get(query);
+        if (positions == null) {
+            long expiresAt = expirationMillis > 0 ? System.currentTimeMillis() + expirationMillis : Long.MAX_VALUE;
+            positions = new Positions(kind, expiresAt);
+            queries.put(query, positions);
+            Set<String> kindQueries = queriesByKind.get(kind);
+            if (kindQueries == null) {
+                kindQueries = new HashSet<>();
+                queriesByKind.put(kind, kindQueries);
+            }
+            kindQueries.add(query);
+        }
+        if (positions.cursors.size() >= MAX_POSITIONS_PER_QUERY && !positions.cursors.containsKey(offset)) {
+            positions.cursors.pollFirstEntry();
+        }
+        positions.cursors.put(offset, cursor);
+    }
+
+    /**
+     * Retrieve the known cursor nearest to the given offset, not beyond it.
+     *
+     * @param query  string representation of the query.
+     * @param offset the requested offset.
+     *
+     * @return an entry offset-cursor, {@code null} if no cursor is known or cursors expired.
+     */
+    public synchronized Map.Entry<Integer, Cursor> floor(String query, int offset) {
+        Positions positions = queries.get(query);
+        if (positions == null) {
+            return null;
+        }
+        if (positions.expiresAt < System.currentTimeMillis()) {
+            queries.remove(query);
+            removeFromKind(positions.kind, query);
+            return null;
+        }
+        return positions.cursors.floorEntry(offset);
+    }
+
+    /**
+     * Discard all the cursors of queries over the given kind.
+     *
+     * @param kind a datastore kind.
+     */
+    public synchronized void invalidate(String kind) {
+        Set<String> kindQueries = queriesByKind.remove(kind);
+        if (kindQueries != null) {
+            for (String query : kindQueries) {
+                queries.remove(query);
+            }
+        }
+    }
+
+    private void removeFromKind(String kind, String query) {
+        Set<String> kindQueries = queriesByKind.get(kind);
+        if (kindQueries != null) {
+            kindQueries.remove(query);
+            if (kindQueries.isEmpty()) {
+                queriesByKind.remove(kind);
+            }
+        }
+    }
+
+    private static class Positions {
+
+        private final String kind;
+        private final long expiresAt;
+        private final TreeMap<Integer, Cursor> cursors = new TreeMap<>();
+
+        private Positions(String kind, long expiresAt) {
+            this.kind = kind;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package it.polimi.kundera.client.datastore.query;
 
+import com.google.appengine.api.datastore.Cursor;
+import com.impetus.kundera.KunderaException;
 import com.impetus.kundera.client.Client;
 import com.impetus.kundera.metadata.KunderaMetadataManager;
 import com.impetus.kundera.metadata.model.EntityMetadata;
@@ -11,10 +13,10 @@ import com.impetus.kundera.query.KunderaQuery;
 import com.impetus.kundera.query.QueryImpl;
 import it.polimi.kundera.client.datastore.DatastoreClient;
 import it.polimi.kundera.client.datastore.DatastoreEntityReader;
-import org.apache.commons.lang.NotImplementedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.persistence.Query;
 import javax.persistence.metamodel.EntityType;
 import java.util.Iterator;
 import java.util.List;
@@ -28,6 +30,9 @@ import java.util.List;
 public class DatastoreQuery extends QueryImpl {
 
     private static Logger logger = LoggerFactory.getLogger(DatastoreQuery.class);
+    private Cursor startCursor;
+    private int firstResult;
+    private boolean maxResultsSet;
 
     public DatastoreQuery(KunderaQuery kunderaQuery, PersistenceDelegator persistenceDelegator, EntityManagerFactoryImpl.KunderaMetadata kunderaMetadata) {
         super(kunderaQuery, persistenceDelegator, kunderaMetadata);
@@ -52,8 +57,9 @@ public class DatastoreQuery extends QueryImpl {
             logger.info(this.getQueryString());
         }
 
-        QueryBuilder builder = translateQuery(this.kunderaQuery, false);
-        return ((DatastoreClient) client).executeQuery(builder);
+        DatastoreClient datastoreClient = (DatastoreClient) client;
+        QueryBuilder builder = translateQuery(this.kunderaQuery, false, datastoreClient);
+        return datastoreClient.executeQuery(builder);
     }
 
     /*
@@ -65,8 +71,9 @@ public class DatastoreQuery extends QueryImpl {
             logger.info(this.getQueryString());
         }
 
-        QueryBuilder builder = translateQuery(this.kunderaQuery, true);
-        List<Object> queryResults = ((DatastoreClient) client).executeQuery(builder);
+        DatastoreClient datastoreClient = (DatastoreClient) client;
+        QueryBuilder builder = translateQuery(this.kunderaQuery, true, datastoreClient);
+        List<Object> queryResults = datastoreClient.executeQuery(builder);
         return setRelationEntities(queryResults, client, m);
     }
 
@@ -82,18 +89,57 @@ public class DatastoreQuery extends QueryImpl {
         return onUpdateDeleteEvent();
     }
 
-    private QueryBuilder translateQuery(KunderaQuery kunderaQuery, boolean holdRelationships) {
-        EntityMetadata entityMetadata = KunderaMetadataManager.getEntityMetadata(kunderaMetadata, kunderaQuery.getEntityClass());
-        MetamodelImpl metaModel = (MetamodelImpl) kunderaMetadata.getApplicationMetadata().getMetamodel(entityMetadata.getPersistenceUnit());
-        EntityType entityType = metaModel.entity(entityMetadata.getEntityClazz());
+    /*
+     * the query shape is translated once into a plan shared by the
+     * clients of the persistence unit, executions only bind their values.
+     */
+    private QueryBuilder translateQuery(KunderaQuery kunderaQuery, boolean holdRelationships, DatastoreClient client) {
+        QueryPlanCache queryPlans = client.getQueryPlans();
+        String signature = QueryPlan.signature(kunderaQuery.getEntityClass(), kunderaQuery.getResult(),
+                kunderaQuery.getFilterClauseQueue(), kunderaQuery.getOrdering());
+        QueryPlan plan = queryPlans.get(signature);
+        if (plan == null) {
+            logger.debug("compile query plan " + signature);
+            EntityMetadata entityMetadata = KunderaMetadataManager.getEntityMetadata(kunderaMetadata, kunderaQuery.getEntityClass());
+            MetamodelImpl metaModel = (MetamodelImpl) kunderaMetadata.getApplicationMetadata().getMetamodel(entityMetadata.getPersistenceUnit());
+            EntityType entityType = metaModel.entity(entityMetadata.getEntityClazz());
+            plan = QueryPlan.compile(entityMetadata, entityType, super.getColumns(kunderaQuery.getResult(), entityMetadata),
+                    kunderaQuery.getFilterClauseQueue(), kunderaQuery.getOrdering());
+            queryPlans.put(signature, plan);
+        }
 
-        QueryBuilder builder = new QueryBuilder(entityMetadata, entityType, holdRelationships);
-        builder.setFrom(entityMetadata.getTableName())
-                .addProjections(super.getColumns(kunderaQuery.getResult(), entityMetadata))
-                .addFilters(kunderaQuery.getFilterClauseQueue())
-                .addOrderings(kunderaQuery.getOrdering())
-                .setLimit(super.getMaxResults());
-        return builder;
+        return new QueryBuilder(plan, holdRelationships)
+                .bind(kunderaQuery.getFilterClauseQueue())
+                .setLimit(super.getMaxResults())
+                .setOffset(this.firstResult);
+    }
+
+    /*
+     * offset is applied by DatastoreClient, resuming from cached
+     * cursors whenever possible.
+     */
+    @Override
+    public Query setFirstResult(int startPosition) {
+        if (startPosition < 0) {
+            throw new IllegalArgumentException("First result must be non negative: " + startPosition);
+        }
+        this.firstResult = startPosition;
+        return this;
+    }
+
+    @Override
+    public int getFirstResult() {
+        return this.firstResult;
+    }
+
+    /*
+     * Kundera applies a default limit when none is set,
+     * iterate() scrolls all the results unless a limit is set.
+     */
+    @Override
+    public Query setMaxResults(int maxResult) {
+        this.maxResultsSet = true;
+        return super.setMaxResults(maxResult);
     }
 
     /*
@@ -101,10 +147,53 @@ public class DatastoreQuery extends QueryImpl {
      */
     @Override
     public Iterator iterate() {
-        // TODO
-        //return new ResultIterator(...)
-        throw new NotImplementedException();
-        // return null;
+        if (logger.isDebugEnabled()) {
+            logger.info(this.getQueryString());
+        }
+
+        EntityMetadata entityMetadata = KunderaMetadataManager.getEntityMetadata(kunderaMetadata, kunderaQuery.getEntityClass());
+        DatastoreClient client = (DatastoreClient) persistenceDelegeator.getClient(entityMetadata);
+        QueryBuilder builder = translateQuery(this.kunderaQuery, holdRelationships(entityMetadata), client);
+        if (!maxResultsSet) {
+            builder.setLimit(Integer.MAX_VALUE);
+        }
+        Integer pageSize = client.getClientConfig().getQueryChunkSize();
+        return new ResultIterator(this, client, builder, entityMetadata,
+                pageSize != null ? pageSize : ResultIterator.DEFAULT_PAGE_SIZE, startCursor);
+    }
+
+    /**
+     * Set the cursor from which {@link #iterate()} starts, as given by {@link ResultIterator#getWebSafeCursor()}.
+     *
+     * @param webSafeCursor a web safe cursor string.
+     *
+     * @return this, for chaining.
+     *
+     * @throws com.impetus.kundera.KunderaException if the cursor cannot be parsed.
+     */
+    public DatastoreQuery setStartCursor(String webSafeCursor) {
+        try {
+            this.startCursor = webSafeCursor != null ? Cursor.fromWebSafeString(webSafeCursor) : null;
+        } catch (IllegalArgumentException e) {
+            throw new KunderaException("Invalid cursor " + webSafeCursor + ": ", e);
+        }
+        return this;
+    }
+
+    /*
+     * same condition used by Kundera to choose between
+     * populateEntities and recursivelyPopulateEntities.
+     */
+    private boolean holdRelationships(EntityMetadata entityMetadata) {
+        return entityMetadata.isRelationViaJoinTable() ||
+                (entityMetadata.getRelationNames() != null && !entityMetadata.getRelationNames().isEmpty());
+    }
+
+    /*
+     * let ResultIterator populate relationships page by page.
+     */
+    List<Object> populateRelations(List<Object> enhanceEntities, Client client, EntityMetadata entityMetadata) {
+        return setRelationEntities(enhanceEntities, client, entityMetadata);
     }
 
     @Override
@@ -0,0 +1,348 @@
+package it.polimi.kundera.client.datastore.query;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.ShortBlob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Executes queries with IN or OR filters as concurrent sub-queries through
+ * {@link com.google.appengine.api.datastore.AsyncDatastoreService}, instead of
+ * the serial sub-queries run by datastore.
+ * <p/>
+ * The filter is rewritten as a disjunction of conjunctive filters, each one run as
+ * a sub-query, and the results are merged honoring the sort orders of the query and
+ * discarding duplicates by key. Sub-queries are read lazily, so merging stops
+ * fetching once the requested results have been consumed.
+ * <p/>
+ * All the sub-queries are run, at most {@code maxQueries} of them are waited
+ * for at the same time: a new sub-query is started each time the first batch
+ * of a running one has been received.
+ *
+ * @author Fabio Arcidiacono.
+ * @see com.google.appengine.api.datastore.AsyncDatastoreService#prepare(com.google.appengine.api.datastore.Query)
+ */
+public class FanOutQuery {
+
+    private static final Logger logger = LoggerFactory.getLogger(FanOutQuery.class);
+
+    private final AsyncDatastoreService asyncDatastore;
+    private final int maxQueries;
+
+    /**
+     * @param asyncDatastore service used to run sub-queries.
+     * @param maxQueries     maximum number of sub-queries run concurrently.
+     */
+    public FanOutQuery(AsyncDatastoreService asyncDatastore, int maxQueries) {
+        this.asyncDatastore = asyncDatastore;
+        this.maxQueries = maxQueries;
+    }
+
+    /**
+     * Execute a query as concurrent sub-queries.
+     *
+     * @param query        datastore query, without projections.
+     * @param fetchOptions fetch options of each sub-query, without offset since sub-queries
+     *                     cannot skip results on their own.
+     *
+     * @return an iterator over the merged results, {@code null} if the query
+     * does not need or does not allow to be split.
+     */
+    public Iterator<Entity> execute(Query query, FetchOptions fetchOptions) {
+        if (query.getFilter() == null || !query.getProjections().isEmpty() || query.isKeysOnly()) {
+            return null;
+        }
+        List<List<Query.Filter>> disjuncts = disjuncts(query.getFilter());
+        if (disjuncts == null || disjuncts.size() < 2) {
+            return null;
+        }
+        logger.debug("fan out query in " + disjuncts.size() + " sub-queries");
+        List<Query> subQueries = new ArrayList<>();
+        for (List<Query.Filter> conjuncts : disjuncts) {
+            Query subQuery = new Query(query.getKind());
+            if (query.getAncestor() != null) {
+                subQuery.setAncestor(query.getAncestor());
+            }
+            subQuery.setFilter(conjuncts.size() == 1 ? conjuncts.get(0) : Query.CompositeFilterOperator.and(conjuncts));
+            for (Query.SortPredicate sort : query.getSortPredicates()) {
+                subQuery.addSort(sort.getPropertyName(), sort.getDirection());
+            }
+            subQueries.add(subQuery);
+        }
+        return new MergeIterator(start(subQueries, fetchOptions), new EntityComparator(query.getSortPredicates()));
+    }
+
+    /*
+     * the first batch of a sub-query is requested when it is started, without
+     * waiting for it, the window slides as the first batches are received.
+     */
+    private List<Iterator<Entity>> start(List<Query> subQueries, FetchOptions fetchOptions) {
+        List<Iterator<Entity>> results = new ArrayList<>();
+        int started = 0;
+        while (started < subQueries.size() && started < maxQueries) {
+            results.add(asyncDatastore.prepare(subQueries.get(started++)).asIterator(fetchOptions));
+        }
+        for (int i = 0; i < subQueries.size(); i++) {
+            /* blocks until the first batch of the i-th sub-query is received */
+            results.get(i).hasNext();
+            if (started < subQueries.size()) {
+                results.add(asyncDatastore.prepare(subQueries.get(started++)).asIterator(fetchOptions));
+            }
+        }
+        return results;
+    }
+
+    /*
+     * disjunctive normal form of the filter, each element is a list of filters to be
+     * put in AND. null if the filter cannot be split.
+     */
+    private List<List<Query.Filter>> disjuncts(Query.Filter filter) {
+        if (filter instanceof Query.FilterPredicate) {
+            Query.FilterPredicate predicate = (Query.FilterPredicate) filter;
+            if (predicate.getOperator().equals(Query.FilterOperator.NOT_EQUAL)) {
+                /* sub-queries with inequalities on other properties are left to datastore */
+                return null;
+            }
+            List<List<Query.Filter>> disjuncts = new ArrayList<>();
+            if (!predicate.getOperator().equals(Query.FilterOperator.IN)) {
+                disjuncts.add(Collections.<Query.Filter>singletonList(predicate));
+                return disjuncts;
+            }
+            Collection<?> values = (Collection<?>) predicate.getValue();
+            if (values.isEmpty()) {
+                return null;
+            }
+            for (Object value : new LinkedHashSet<>(values)) {
+                Query.Filter equal = new Query.FilterPredicate(predicate.getPropertyName(), Query.FilterOperator.EQUAL, value);
+                disjuncts.add(Collections.singletonList(equal));
+            }
+            return disjuncts;
+        }
+        Query.CompositeFilter composite = (Query.CompositeFilter) filter;
+        List<List<Query.Filter>> disjuncts = new ArrayList<>();
+        if (composite.getOperator().equals(Query.CompositeFilterOperator.OR)) {
+            for (Query.Filter subFilter : composite.getSubFilters()) {
+                List<List<Query.Filter>> subDisjuncts = disjuncts(subFilter);
+                if (subDisjuncts == null) {
+                    return null;
+                }
+                disjuncts.addAll(subDisjuncts);
+            }
+            return disjuncts;
+        }
+        /* AND distributes over the disjuncts of its operands */
+        disjuncts.add(Collections.<Query.Filter>emptyList());
+        for (Query.Filter subFilter : composite.getSubFilters()) {
+            List<List<Query.Filter>> subDisjuncts = disjuncts(subFilter);
+            if (subDisjuncts == null) {
+                return null;
+            }
+            List<List<Query.Filter>> product = new ArrayList<>();
+            for (List<Query.Filter> left : disjuncts) {
+                for (List<Query.Filter> right : subDisjuncts) {
+                    List<Query.Filter> conjuncts = new ArrayList<>(left);
+                    conjuncts.addAll(right);
+                    product.add(conjuncts);
+                }
+            }
+            disjuncts = product;
+        }
+        return disjuncts;
+    }
+
+    /*
+     * k-way merge of sorted results, skipping entities already returned.
+     */
+    private static class MergeIterator implements Iterator<Entity> {
+
+        private final PriorityQueue<Head> heads;
+        private final Set<Key> seen = new HashSet<>();
+        private Entity next;
+
+        private MergeIterator(List<Iterator<Entity>> results, final Comparator<Entity> comparator) {
+            this.heads = new PriorityQueue<>(results.size(), new Comparator<Head>() {
+                @Override
+                public int compare(Head h1, Head h2) {
+                    return comparator.compare(h1.entity, h2.entity);
+                }
+            });
+            for (Iterator<Entity> result : results) {
+                advance(result);
+            }
+        }
+
+        private void advance(Iterator<Entity> result) {
+            if (result.hasNext()) {
+                heads.add(new Head(result.next(), result));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !heads.isEmpty()) {
+                Head head = heads.poll();
+                advance(head.result);
+                if (seen.add(head.entity.getKey())) {
+                    next = head.entity;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Entity next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entity entity = next;
+            next = null;
+            return entity;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Remove is not supported by " + this.getClass().getSimpleName());
+        }
+    }
+
+    private static class Head {
+
+        private final Entity entity;
+        private final Iterator<Entity> result;
+
+        private Head(Entity entity, Iterator<Entity> result) {
+            this.entity = entity;
+            this.result = result;
+        }
+    }
+
+    /*
+     * same order datastore gives to query results: sort orders, then key.
+     */
+    private static class EntityComparator implements Comparator<Entity> {
+
+        private final List<Query.SortPredicate> sorts;
+
+        private EntityComparator(List<Query.SortPredicate> sorts) {
+            this.sorts = sorts;
+        }
+
+        @Override
+        public int compare(Entity e1, Entity e2) {
+            for (Query.SortPredicate sort : sorts) {
+                boolean descending = sort.getDirection().equals(Query.SortDirection.DESCENDING);
+                int comparison = compareValues(sortValue(e1, sort.getPropertyName(), descending),
+                        sortValue(e2, sort.getPropertyName(), descending));
+                if (comparison != 0) {
+                    return descending ? -comparison : comparison;
+                }
+            }
+            return e1.getKey().compareTo(e2.getKey());
+        }
+
+        /* multi-valued properties sort by their lowest value ascending, by the highest descending */
+        private static Object sortValue(Entity entity, String property, boolean descending) {
+            if (property.equals(Entity.KEY_RESERVED_PROPERTY)) {
+                return entity.getKey();
+            }
+            Object value = entity.getProperty(property);
+            if (!(value instanceof Collection)) {
+                return value;
+            }
+            Object sortValue = null;
+            boolean first = true;
+            for (Object element : (Collection<?>) value) {
+                int comparison = compareValues(element, sortValue);
+                if (first || (descending ? comparison > 0 : comparison < 0)) {
+                    sortValue = element;
+                    first = false;
+                }
+            }
+            return sortValue;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static int compareValues(Object v1, Object v2) {
+            int rank1 = typeRank(v1);
+            int rank2 = typeRank(v2);
+            if (rank1 != rank2) {
+                return rank1 < rank2 ? -1 : 1;
+            }
+            if (v1 == null) {
+                return 0;
+            }
+            if (rank1 == 1) {
+                /* integers and dates share the same rank, dates as microseconds */
+                return Long.compare(toLong(v1), toLong(v2));
+            }
+            if (rank1 == 5) {
+                return Double.compare(((Number) v1).doubleValue(), ((Number) v2).doubleValue());
+            }
+            if (rank1 == 3) {
+                return compareBytes(toBytes(v1), toBytes(v2));
+            }
+            if (v1.getClass() != v2.getClass() || !(v1 instanceof Comparable)) {
+                return v1.getClass().getName().compareTo(v2.getClass().getName());
+            }
+            return ((Comparable<Object>) v1).compareTo(v2);
+        }
+
+        /* byte strings compare as unsigned bytes */
+        private static int compareBytes(byte[] b1, byte[] b2) {
+            for (int i = 0; i < Math.min(b1.length, b2.length); i++) {
+                int comparison = Integer.compare(b1[i] & 0xFF, b2[i] & 0xFF);
+                if (comparison != 0) {
+                    return comparison;
+                }
+            }
+            return Integer.compare(b1.length, b2.length);
+        }
+
+        private static byte[] toBytes(Object value) {
+            if (value instanceof ShortBlob) {
+                return ((ShortBlob) value).getBytes();
+            }
+            return ((String) value).getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static long toLong(Object value) {
+            if (value instanceof Date) {
+                return ((Date) value).getTime() * 1000L;
+            }
+            return ((Number) value).longValue();
+        }
+
+        /* datastore order of value types */
+        private static int typeRank(Object value) {
+            if (value == null) {
+                return 0;
+            }
+            if (value instanceof Long || value instanceof Integer || value instanceof Short
+                    || value instanceof Byte || value instanceof Date) {
+                return 1;
+            }
+            if (value instanceof Boolean) {
+                return 2;
+            }
+            /* strings and short blobs are both byte strings, strings as UTF-8 */
+            if (value instanceof ShortBlob || value instanceof String) {
+                return 3;
+            }
+            if (value instanceof Double || value instanceof Float) {
+                return 5;
+            }
+            if (value instanceof Key) {
+                return 7;
+            }
+            /* geo points and users */
+            return 6;
+        }
+    }
+}
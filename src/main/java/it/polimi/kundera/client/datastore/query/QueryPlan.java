@@ -0,0 +1,309 @@
+package it.polimi.kundera.client.datastore.query;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.impetus.kundera.KunderaException;
+import com.impetus.kundera.metadata.model.EntityMetadata;
+import com.impetus.kundera.metadata.model.attributes.AbstractAttribute;
+import com.impetus.kundera.query.KunderaQuery;
+import it.polimi.kundera.client.datastore.DatastoreUtils;
+
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Translation of the shape of a {@link com.impetus.kundera.query.KunderaQuery}, i.e. of
+ * the query without its parameter values, to {@link com.google.appengine.api.datastore.Query}.
+ * <p/>
+ * Projections, orderings and filters are resolved against entity metadata once
+ * when the plan is compiled, each execution only binds the values of the filters.
+ *
+ * @author Fabio Arcidiacono.
+ * @see it.polimi.kundera.client.datastore.query.QueryPlanCache
+ */
+public class QueryPlan {
+
+    private final EntityMetadata entityMetadata;
+    private final String kind;
+    private final List<PropertyProjection> projections = new ArrayList<>();
+    private final List<Query.SortPredicate> sorts = new ArrayList<>();
+    private final List<FilterSlot> filters = new ArrayList<>();
+    private boolean supportsCursors = true;
+
+    private QueryPlan(EntityMetadata entityMetadata) {
+        this.entityMetadata = entityMetadata;
+        this.kind = entityMetadata.getTableName();
+    }
+
+    /**
+     * Compile the plan of a query.
+     *
+     * @param entityMetadata    metadata of the queried entity.
+     * @param entityType        metamodel type of the queried entity.
+     * @param columns           array of column names on which add a projection.
+     * @param filterClauseQueue filter clause queue from {@link com.impetus.kundera.query.KunderaQuery}.
+     * @param ordering          list of {@link com.impetus.kundera.query.KunderaQuery.SortOrdering}.
+     *
+     * @return the compiled plan.
+     *
+     * @throws com.impetus.kundera.KunderaException if the query cannot be translated.
+     */
+    public static QueryPlan compile(EntityMetadata entityMetadata, EntityType entityType, String[] columns,
+                                    Queue filterClauseQueue, List<KunderaQuery.SortOrdering> ordering) {
+        QueryPlan plan = new QueryPlan(entityMetadata);
+        plan.compileProjections(entityType, columns);
+        plan.compileFilters(entityType, filterClauseQueue);
+        plan.compileOrderings(entityType, ordering);
+        return plan;
+    }
+
+    /**
+     * Signature of the shape of a query, queries with the same signature share the same plan.
+     *
+     * @param entityClass       class of the queried entity.
+     * @param result            result clause from {@link com.impetus.kundera.query.KunderaQuery}.
+     * @param filterClauseQueue filter clause queue from {@link com.impetus.kundera.query.KunderaQuery}.
+     * @param ordering          list of {@link com.impetus.kundera.query.KunderaQuery.SortOrdering}.
+     *
+     * @return the signature.
+     */
+    public static String signature(Class entityClass, String[] result, Queue filterClauseQueue,
+                                   List<KunderaQuery.SortOrdering> ordering) {
+        StringBuilder signature = new StringBuilder(entityClass.getName()).append(" SELECT");
+        if (result != null) {
+            for (String column : result) {
+                signature.append(' ').append(column);
+            }
+        }
+        signature.append(" WHERE");
+        for (Object filterClause : filterClauseQueue) {
+            if (filterClause instanceof KunderaQuery.FilterClause) {
+                KunderaQuery.FilterClause clause = (KunderaQuery.FilterClause) filterClause;
+                signature.append(' ').append(clause.getProperty()).append(' ').append(clause.getCondition()).append(" ?");
+            } else {
+                signature.append(' ').append(filterClause.toString().trim());
+            }
+        }
+        signature.append(" ORDER BY");
+        if (ordering != null) {
+            for (KunderaQuery.SortOrdering order : ordering) {
+                signature.append(' ').append(order.getColumnName()).append(' ').append(order.getOrder());
+            }
+        }
+        return signature.toString();
+    }
+
+    public EntityMetadata getEntityMetadata() {
+        return this.entityMetadata;
+    }
+
+    /**
+     * Datastore does not support cursors for queries that are executed
+     * as multiple queries, i.e. the ones using IN, != or OR.
+     *
+     * @return {@code true} if cursors can be used with the query.
+     */
+    public boolean supportsCursors() {
+        return this.supportsCursors;
+    }
+
+    /**
+     * Create a datastore query binding the values of the given filter clauses.
+     *
+     * @param filterClauseQueue filter clause queue with the same signature of the compiled one.
+     *
+     * @return a new {@link com.google.appengine.api.datastore.Query}.
+     */
+    public Query bind(Queue filterClauseQueue) {
+        Query query = new Query(kind);
+        for (PropertyProjection projection : projections) {
+            query.addProjection(projection);
+        }
+        Query.Filter filter = null;
+        int index = 0;
+        for (Object filterClause : filterClauseQueue) {
+            if (filterClause instanceof KunderaQuery.FilterClause) {
+                FilterSlot slot = filters.get(index++);
+                Query.Filter propertyFilter = slot.bind(((KunderaQuery.FilterClause) filterClause).getValue().get(0));
+                if (slot.composeOperator != null) {
+                    propertyFilter = slot.composeOperator.equals(Query.CompositeFilterOperator.AND)
+                            ? Query.CompositeFilterOperator.and(filter, propertyFilter)
+                            : Query.CompositeFilterOperator.or(filter, propertyFilter);
+                }
+                filter = propertyFilter;
+            }
+        }
+        if (filter != null) {
+            query.setFilter(filter);
+        }
+        for (Query.SortPredicate sort : sorts) {
+            query.addSort(sort.getPropertyName(), sort.getDirection());
+        }
+        return query;
+    }
+
+    /*---------------------------------------------------------------------------------*/
+    /*----------------------------------- COMPILE -------------------------------------*/
+    /*---------------------------------------------------------------------------------*/
+
+    private void compileProjections(EntityType entityType, String[] columns) {
+        for (String column : columns) {
+            try {
+                String filedName = entityMetadata.getFieldName(column);
+                Attribute attribute = entityType.getAttribute(filedName);
+                projections.add(new PropertyProjection(column, attribute.getJavaType()));
+            } catch (NullPointerException e) {
+                /* case attribute not found */
+                throw new KunderaException("Cannot find Java type for " + column + ": ", e);
+            }
+        }
+    }
+
+    private void compileOrderings(EntityType entityType, List<KunderaQuery.SortOrdering> ordering) {
+        if (ordering != null && !ordering.isEmpty()) {
+            for (KunderaQuery.SortOrdering order : ordering) {
+                Query.SortDirection direction = parseOrdering(order.getOrder());
+                try {
+                    String attributeName = order.getColumnName().split("\\.")[1];
+                    Attribute attribute = entityType.getAttribute(attributeName);
+                    String jpaColumnName = ((AbstractAttribute) attribute).getJPAColumnName();
+                    sorts.add(new Query.SortPredicate(jpaColumnName, direction));
+                } catch (IndexOutOfBoundsException | NullPointerException e) {
+                    /* case fail in split() -> IndexOutOfBoundsException */
+                    /* case attribute not found -> NullPointerException  */
+                    throw new KunderaException("Attribute " + order.getColumnName() + " not found in entity class " + entityMetadata.getEntityClazz() + ": ", e);
+                }
+            }
+        }
+    }
+
+    private Query.SortDirection parseOrdering(KunderaQuery.SortOrder order) {
+        if (order.equals(KunderaQuery.SortOrder.ASC)) {
+            return Query.SortDirection.ASCENDING;
+        } else if (order.equals(KunderaQuery.SortOrder.DESC)) {
+            return Query.SortDirection.DESCENDING;
+        }
+        throw new KunderaException("Ordering " + order + " is not supported by Datastore");
+    }
+
+    private void compileFilters(EntityType entityType, Queue filterClauseQueue) {
+        Query.CompositeFilterOperator composeOperator = null;
+        for (Object filterClause : filterClauseQueue) {
+            if (filterClause instanceof KunderaQuery.FilterClause) {
+                FilterSlot slot = compileFilter(entityType, (KunderaQuery.FilterClause) filterClause);
+                /* the first filter has nothing to be composed with */
+                slot.composeOperator = filters.isEmpty() ? null : composeOperator;
+                filters.add(slot);
+            } else if (filterClause instanceof String) {
+                composeOperator = parseComposeOperator(filterClause.toString().trim());
+            }
+        }
+    }
+
+    private Query.CompositeFilterOperator parseComposeOperator(String composeOperator) {
+        if ("AND".equalsIgnoreCase(composeOperator)) {
+            return Query.CompositeFilterOperator.AND;
+        } else if ("OR".equalsIgnoreCase(composeOperator)) {
+            this.supportsCursors = false;
+            return Query.CompositeFilterOperator.OR;
+        }
+        throw new KunderaException("Composition with " + composeOperator + " is not supported by Datastore");
+    }
+
+    private FilterSlot compileFilter(EntityType entityType, KunderaQuery.FilterClause filterClause) {
+        Query.FilterOperator operator = parseCondition(filterClause.getCondition());
+        String property = filterClause.getProperty();
+        if (operator.equals(Query.FilterOperator.IN) || operator.equals(Query.FilterOperator.NOT_EQUAL)) {
+            this.supportsCursors = false;
+        }
+
+        String idColumnName = ((AbstractAttribute) entityMetadata.getIdAttribute()).getJPAColumnName();
+        String filedName = entityMetadata.getFieldName(property);
+        if (entityType.getAttribute(filedName).isAssociation()) {
+            /* filter on related entity */
+            String targetKind = entityMetadata.getRelation(filedName).getTargetEntity().getSimpleName();
+            return new FilterSlot(property, operator, targetKind);
+        }
+        if (property.equals(idColumnName)) {
+            /* filter on entity ID */
+            return new FilterSlot(Entity.KEY_RESERVED_PROPERTY, operator, kind);
+        }
+        /* filter on entity filed */
+        return new FilterSlot(property, operator, null);
+    }
+
+    private Query.FilterOperator parseCondition(String condition) {
+        /* BETWEEN is automatically converted in (X >= K1 AND X <= K2) by Kundera */
+        switch (condition) {
+            case "=":
+                return Query.FilterOperator.EQUAL;
+            case "!=":
+                return Query.FilterOperator.NOT_EQUAL;
+            case ">":
+                return Query.FilterOperator.GREATER_THAN;
+            case ">=":
+                return Query.FilterOperator.GREATER_THAN_OR_EQUAL;
+            case "<":
+                return Query.FilterOperator.LESS_THAN;
+            case "<=":
+                return Query.FilterOperator.LESS_THAN_OR_EQUAL;
+            case "IN":
+                return Query.FilterOperator.IN;
+            default:
+                throw new KunderaException("Condition " + condition + " is not supported by Datastore");
+        }
+    }
+
+    /*
+     * a filter of the plan, waiting for its value.
+     */
+    private static class FilterSlot {
+
+        private final String property;
+        private final Query.FilterOperator operator;
+        /* kind of the key built from the value, null if the value is used as is */
+        private final String keyKind;
+        private Query.CompositeFilterOperator composeOperator;
+
+        private FilterSlot(String property, Query.FilterOperator operator, String keyKind) {
+            this.property = property;
+            this.operator = operator;
+            this.keyKind = keyKind;
+        }
+
+        private Query.Filter bind(Object filterValue) {
+            if (keyKind != null) {
+                return new Query.FilterPredicate(property, operator, DatastoreUtils.createKey(keyKind, filterValue));
+            }
+            if (operator.equals(Query.FilterOperator.IN)) {
+                /* handle filterValue in case of IN operator*/
+                if (filterValue instanceof String) {
+                    filterValue = toCollection((String) filterValue);
+                } else if (!(filterValue instanceof Collection)) {
+                    throw new KunderaException("For IN operator value must be either a Collection or a String like ('a', 'b', 'c')");
+                }
+            }
+            return new Query.FilterPredicate(property, operator, filterValue);
+        }
+
+        /*
+         * since Kundera 2.14 works only for queries like "WHERE e.name IN ('Fabio', 'Crizia')"
+         * transform the string like ('Fabio', 'Crizia') to Collection
+         */
+        private static Collection<Object> toCollection(String filterValue) {
+            // remove parenthesis and quotes
+            String filter = filterValue.substring(1, filterValue.length() - 1).replace("'", "").trim();
+            String[] elements = filter.split(",");
+            List<Object> trimmed = new ArrayList<>();
+            for (String el : elements) {
+                trimmed.add(el.trim());
+            }
+            return trimmed;
+        }
+    }
+}
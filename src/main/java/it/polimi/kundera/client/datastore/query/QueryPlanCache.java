@@ -0,0 +1,38 @@
+package it.polimi.kundera.client.datastore.query;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the compiled {@link it.polimi.kundera.client.datastore.query.QueryPlan}
+ * of each query shape, so that queries are translated once and then only bound
+ * to their parameter values.
+ * <p/>
+ * Applications have a bounded number of query shapes, the cache stops growing
+ * once full to protect from queries built dynamically.
+ *
+ * @author Fabio Arcidiacono.
+ */
+public class QueryPlanCache {
+
+    public static final int MAX_PLANS = 1000;
+
+    private final ConcurrentMap<String, QueryPlan> plans = new ConcurrentHashMap<>();
+
+    /**
+     * @param signature signature of the query shape.
+     *
+     * @return the plan, {@code null} if not compiled yet.
+     *
+     * @see it.polimi.kundera.client.datastore.query.QueryPlan#signature
+     */
+    public QueryPlan get(String signature) {
+        return plans.get(signature);
+    }
+
+    public void put(String signature, QueryPlan plan) {
+        if (plans.size() < MAX_PLANS) {
+            plans.putIfAbsent(signature, plan);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package it.polimi.kundera.client.datastore.query;
+
+import com.google.appengine.api.datastore.Key;
+
+import java.util.*;
+
+/**
+ * Keeps the keys of the results of executed queries, keyed by query, limit and offset,
+ * so that a repeated query is resolved with a batch get instead of being executed again.
+ * <p/>
+ * Results of a kind are discarded when entities of that kind are written by the client,
+ * writes made by other application instances are seen only once results expire.
+ *
+ * @author Fabio Arcidiacono.
+ */
+public class QueryResultCache {
+
+    private final Map<String, Results> queries;
+    private final Map<String, Set<String>> queriesByKind = new HashMap<>();
+    private final long expirationMillis;
+
+    /**
+     * @param maxQueries maximum number of queries whose results are kept,
+     *                   least recently used ones are evicted first.
+     * @param expiration seconds after which results expire, 0 for no expiration.
+     */
+    public QueryResultCache(final int maxQueries, int expiration) {
+        this.expirationMillis = expiration * 1000L;
+        this.queries = new LinkedHashMap<String, Results>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Results> eldest) {
+                if (size() > maxQueries) {
+                    removeFromKind(eldest.getValue().kind, eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Store the keys of the results of a query.
+     *
+     * @param kind  kind of the query.
+     * @param query string representation of the query, including limit and offset.
+     * @param keys  keys of the results, in order.
+     */
+    public synchronized void put(String kind, String query, List<Key> keys) {
+        long expiresAt = expirationMillis > 0 ? System.currentTimeMillis() + expirationMillis : Long.MAX_VALUE;
+        queries.put(query, new Results(kind, keys, expiresAt));
+        Set<String> kindQueries = queriesByKind.get(kind);
+        if (kindQueries == null) {
+            kindQueries = new HashSet<>();
+            queriesByKind.put(kind, kindQueries);
+        }
+        kindQueries.add(query);
+    }
+
+    /**
+     * @param query string representation of the query, including limit and offset.
+     *
+     * @return the keys of the results, in order, {@code null} if not known or expired.
+     */
+    public synchronized List<Key> get(String query) {
+        Results results = queries.get(query);
+        if (results == null) {
+            return null;
+        }
+        if (results.expiresAt < System.currentTimeMillis()) {
+            queries.remove(query);
+            removeFromKind(results.kind, query);
+            return null;
+        }
+        return results.keys;
+    }
+
+    /**
+     * Discard the results of all the queries over the given kind.
+     *
+     * @param kind a datastore kind.
+     */
+    public synchronized void invalidate(String kind) {
+        Set<String> kindQueries = queriesByKind.remove(kind);
+        if (kindQueries != null) {
+            for (String query : kindQueries) {
+                queries.remove(query);
+            }
+        }
+    }
+
+    private void removeFromKind(String kind, String query) {
+        Set<String> kindQueries = queriesByKind.get(kind);
+        if (kindQueries != null) {
+            kindQueries.remove(query);
+            if (kindQueries.isEmpty()) {
+                queriesByKind.remove(kind);
+            }
+        }
+    }
+
+    private static class Results {
+
+        private final String kind;
+        private final List<Key> keys;
+        private final long expiresAt;
+
+        private Results(String kind, List<Key> keys, long expiresAt) {
+            this.kind = kind;
+            this.keys = Collections.unmodifiableList(new ArrayList<>(keys));
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package it.polimi.kundera.client.datastore.query;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.impetus.kundera.KunderaException;
+import com.impetus.kundera.metadata.model.EntityMetadata;
+import it.polimi.kundera.client.datastore.DatastoreClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over query results page by page using datastore {@link com.google.appengine.api.datastore.Cursor},
+ * so that only a page of results is held in memory at any time.
+ * <p/>
+ * The cursor positioned after the last returned result is available through
+ * {@link #getCursor()}, it can be given back to {@link DatastoreQuery#setStartCursor(String)}
+ * to resume the iteration.
+ * <p/>
+ * Queries executed as multiple queries (IN, != or OR) do not support cursors,
+ * their results are read through a single iterator, still page by page, and no cursor is available.
+ *
+ * @author Fabio Arcidiacono.
+ * @see it.polimi.kundera.client.datastore.query.DatastoreQuery#iterate()
+ */
+public class ResultIterator<E> implements Iterator<E> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResultIterator.class);
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    private final DatastoreQuery query;
+    private final DatastoreClient client;
+    private final QueryBuilder builder;
+    private final EntityMetadata entityMetadata;
+    private final int pageSize;
+    private int remaining;
+    /* results to skip, applied by the first page only */
+    private int offset;
+    private boolean exhausted;
+    /* single iterator over the results of queries that do not support cursors */
+    private Iterator<Entity> results;
+
+    /* cursor after the last result returned by next() */
+    private Cursor cursor;
+    private List<E> page = new ArrayList<>();
+    private List<Cursor> pageCursors = new ArrayList<>();
+    private int position;
+
+    ResultIterator(DatastoreQuery query, DatastoreClient client, QueryBuilder builder, EntityMetadata entityMetadata, int pageSize, Cursor startCursor) {
+        this.query = query;
+        this.client = client;
+        this.builder = builder;
+        this.entityMetadata = entityMetadata;
+        this.pageSize = pageSize;
+        this.remaining = builder.getLimit();
+        this.cursor = startCursor;
+        /* a start cursor is already positioned after the skipped results */
+        this.offset = startCursor == null ? builder.getOffset() : 0;
+        if (startCursor != null && !builder.supportsCursors()) {
+            throw new KunderaException("Cursors are not supported by queries with IN, != or OR filters");
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (position < page.size()) {
+            return true;
+        }
+        if (!exhausted) {
+            fetchPage();
+        }
+        return position < page.size();
+    }
+
+    @Override
+    public E next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        cursor = pageCursors.get(position);
+        return page.get(position++);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Remove is not supported by " + this.getClass().getSimpleName());
+    }
+
+    /**
+     * Cursor positioned after the last result returned by {@link #next()}.
+     *
+     * @return the current {@link com.google.appengine.api.datastore.Cursor}, {@code null} if
+     * the iteration has not started and no start cursor was given.
+     */
+    public Cursor getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Web safe representation of the current cursor, see {@link #getCursor()}.
+     *
+     * @return the current cursor as web safe string, {@code null} if there is no cursor.
+     */
+    public String getWebSafeCursor() {
+        return cursor != null ? cursor.toWebSafeString() : null;
+    }
+
+    private void fetchPage() {
+        int limit = Math.min(pageSize, remaining);
+        page = new ArrayList<>();
+        pageCursors = new ArrayList<>();
+        position = 0;
+        if (limit <= 0) {
+            exhausted = true;
+            return;
+        }
+
+        logger.debug("fetch page of " + limit + " results");
+        List<Entity> entities = new ArrayList<>();
+        if (builder.supportsCursors()) {
+            QueryResultIterator<Entity> iterator = client.iterateQuery(builder.getQuery(), limit, offset, cursor);
+            while (iterator.hasNext()) {
+                entities.add(iterator.next());
+                pageCursors.add(iterator.getCursor());
+            }
+        } else {
+            if (results == null) {
+                results = client.iterateQuery(builder.getQuery(), remaining, offset, null);
+            }
+            while (entities.size() < limit && results.hasNext()) {
+                entities.add(results.next());
+                pageCursors.add(null);
+            }
+        }
+        offset = 0;
+        remaining -= entities.size();
+        if (entities.size() < limit) {
+            exhausted = true;
+        }
+
+        List<Object> mapped = client.toQueryResults(entities, builder);
+        if (builder.holdRelationships()) {
+            mapped = query.populateRelations(mapped, client, entityMetadata);
+        }
+        for (Object result : mapped) {
+            page.add((E) result);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package it.polimi.kundera.client.datastore.serializer;
+
+import com.google.appengine.api.datastore.Blob;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Converts objects to datastore {@link com.google.appengine.api.datastore.Blob} and back.
+ * <p/>
+ * Blobs are written with the configured {@link it.polimi.kundera.client.datastore.serializer.BlobSerializer}
+ * and start with its format byte, blobs are read with the serializer matching their format byte.
+ * Blobs written by plain java serialization, before serializers were pluggable,
+ * are recognized by the java serialization stream magic and are still readable.
+ * <p/>
+ * When compression is enabled, serialized values larger than the threshold are deflated
+ * and marked by setting the {@link #COMPRESSED} bit of the format byte.
+ *
+ * @author Fabio Arcidiacono.
+ * @see it.polimi.kundera.client.datastore.serializer.BlobSerializer
+ */
+public class BlobCodec {
+
+    /* first byte of java serialization stream magic 0xACED */
+    private static final byte JAVA_STREAM_MAGIC = (byte) 0xAC;
+    /** format byte flag of compressed blobs, not available to serializer formats. */
+    public static final byte COMPRESSED = 0x40;
+    public static final int NO_COMPRESSION = Deflater.NO_COMPRESSION;
+
+    private final BlobSerializer serializer;
+    private final int compressionLevel;
+    private final int compressionThreshold;
+    private final Map<Byte, BlobSerializer> serializers = new HashMap<>();
+    private final JavaSerializer legacySerializer = new JavaSerializer();
+
+    /**
+     * @param serializer the serializer used to write blobs.
+     */
+    public BlobCodec(BlobSerializer serializer) {
+        this(serializer, NO_COMPRESSION, 0);
+    }
+
+    /**
+     * @param serializer           the serializer used to write blobs.
+     * @param compressionLevel     deflate level from 1 to 9, {@link #NO_COMPRESSION} to disable compression.
+     * @param compressionThreshold minimum size in bytes of serialized values to be compressed.
+     */
+    public BlobCodec(BlobSerializer serializer, int compressionLevel, int compressionThreshold) {
+        if (compressionLevel < NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + compressionLevel);
+        }
+        this.serializer = serializer;
+        this.compressionLevel = compressionLevel;
+        this.compressionThreshold = compressionThreshold;
+        register(new JavaSerializer());
+        register(new CompactSerializer());
+        /* the configured one overrides a built-in with the same format */
+        register(serializer);
+    }
+
+    private void register(BlobSerializer blobSerializer) {
+        byte format = blobSerializer.getFormat();
+        if (format == JAVA_STREAM_MAGIC || format == ChunkedBlob.MARKER || (format & COMPRESSED) != 0) {
+            throw new IllegalArgumentException("Format " + blobSerializer.getFormat() + " of "
+                    + blobSerializer.getClass().getName() + " is reserved");
+        }
+        serializers.put(blobSerializer.getFormat(), blobSerializer);
+    }
+
+    public BlobSerializer getSerializer() {
+        return serializer;
+    }
+
+    /**
+     * Serialize an object to datastore {@link com.google.appengine.api.datastore.Blob}.
+     *
+     * @param obj object to be serialized.
+     *
+     * @return an instance of {@link com.google.appengine.api.datastore.Blob} of the given object.
+     *
+     * @throws IOException
+     */
+    public Blob serialize(Object obj) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(serializer.getFormat());
+        serializer.serialize(obj, out);
+        byte[] bytes = out.toByteArray();
+        if (compressionLevel != NO_COMPRESSION && bytes.length - 1 >= compressionThreshold) {
+            byte[] compressed = compress(bytes);
+            /* keep the uncompressed value whenever compression does not pay off */
+            if (compressed.length < bytes.length) {
+                return new Blob(compressed);
+            }
+        }
+        return new Blob(bytes);
+    }
+
+    private byte[] compress(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+        out.write(bytes[0] | COMPRESSED);
+        Deflater deflater = new Deflater(compressionLevel);
+        try {
+            DeflaterOutputStream deflaterStream = new DeflaterOutputStream(out, deflater);
+            deflaterStream.write(bytes, 1, bytes.length - 1);
+            deflaterStream.finish();
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Deserialize a datastore {@link com.google.appengine.api.datastore.Blob}.
+     *
+     * @param blob a datastore {@link com.google.appengine.api.datastore.Blob}.
+     *
+     * @return the deserialized object.
+     *
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public Object deserialize(Blob blob) throws IOException, ClassNotFoundException {
+        byte[] bytes = blob.getBytes();
+        if (bytes.length == 0) {
+            throw new StreamCorruptedException("Empty blob");
+        }
+        if (bytes[0] == JAVA_STREAM_MAGIC) {
+            return legacySerializer.deserialize(new ByteArrayInputStream(bytes));
+        }
+        boolean compressed = (bytes[0] & COMPRESSED) != 0;
+        BlobSerializer blobSerializer = serializers.get((byte) (bytes[0] & ~COMPRESSED));
+        if (blobSerializer == null) {
+            throw new StreamCorruptedException("Unknown blob format " + bytes[0]);
+        }
+        InputStream in = new ByteArrayInputStream(bytes, 1, bytes.length - 1);
+        if (!compressed) {
+            return blobSerializer.deserialize(in);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            return blobSerializer.deserialize(new InflaterInputStream(in, inflater));
+        } finally {
+            inflater.end();
+        }
+    }
+}
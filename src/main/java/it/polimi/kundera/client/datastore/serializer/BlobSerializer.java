@@ -0,0 +1,46 @@
+package it.polimi.kundera.client.datastore.serializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Serializes values that are stored into datastore as {@link com.google.appengine.api.datastore.Blob}.
+ * <p/>
+ * Implementations are identified by a format byte that is written as first byte of each blob,
+ * so that blobs are always read back with the serializer that wrote them.
+ * Custom implementations must have a public no-arg constructor and a format
+ * not used by the built-in ones, {@link ChunkedBlob#MARKER} and the {@link BlobCodec#COMPRESSED} bit are reserved.
+ *
+ * @author Fabio Arcidiacono.
+ * @see it.polimi.kundera.client.datastore.serializer.BlobCodec
+ */
+public interface BlobSerializer {
+
+    /**
+     * @return the format byte identifying this serializer.
+     */
+    byte getFormat();
+
+    /**
+     * Serialize an object.
+     *
+     * @param obj the object to be serialized.
+     * @param out the stream to which the object is written.
+     *
+     * @throws IOException
+     */
+    void serialize(Object obj, OutputStream out) throws IOException;
+
+    /**
+     * Deserialize an object.
+     *
+     * @param in the stream from which the object is read.
+     *
+     * @return the deserialized object.
+     *
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    Object deserialize(InputStream in) throws IOException, ClassNotFoundException;
+}
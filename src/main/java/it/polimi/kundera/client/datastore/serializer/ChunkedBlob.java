@@ -0,0 +1,146 @@
+package it.polimi.kundera.client.datastore.serializer;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits blobs exceeding datastore size limits into chunk entities and joins them back.
+ * <p/>
+ * Chunks are stored as entities of kind {@link #KIND} children of the owner entity,
+ * keyed by the property name and the chunk index, while the owner property holds
+ * a small marker blob with the number of chunks and the total length.
+ *
+ * @author Fabio Arcidiacono.
+ */
+public final class ChunkedBlob {
+
+    public static final String KIND = "DATASTORE_CHUNK";
+    public static final String DATA = "data";
+    /** format byte of marker blobs, not available to serializer formats. */
+    public static final byte MARKER = 0x3F;
+    private static final int MARKER_LENGTH = 9;
+
+    private ChunkedBlob() {
+    }
+
+    /**
+     * @param blob a datastore {@link com.google.appengine.api.datastore.Blob}.
+     *
+     * @return {@code true} if the blob is a marker of a chunked value.
+     */
+    public static boolean isMarker(Blob blob) {
+        byte[] bytes = blob.getBytes();
+        return bytes.length == MARKER_LENGTH && bytes[0] == MARKER;
+    }
+
+    /**
+     * Replace the blob properties of an entity larger than the chunk size with
+     * markers and create the chunk entities holding their content.
+     *
+     * @param gaeEntity the owner entity, must have a complete key.
+     * @param chunkSize maximum size of a blob kept inline and of each chunk.
+     *
+     * @return the chunk entities to be written along with the owner.
+     */
+    public static List<Entity> split(Entity gaeEntity, int chunkSize) {
+        List<Entity> chunks = new ArrayList<>();
+        if (!gaeEntity.getKey().isComplete()) {
+            return chunks;
+        }
+        List<String> oversized = new ArrayList<>();
+        for (Map.Entry<String, Object> property : gaeEntity.getProperties().entrySet()) {
+            if (property.getValue() instanceof Blob && ((Blob) property.getValue()).getBytes().length > chunkSize) {
+                oversized.add(property.getKey());
+            }
+        }
+        for (String property : oversized) {
+            byte[] bytes = ((Blob) gaeEntity.getProperty(property)).getBytes();
+            int count = (bytes.length + chunkSize - 1) / chunkSize;
+            for (int i = 0; i < count; i++) {
+                byte[] chunk = Arrays.copyOfRange(bytes, i * chunkSize, Math.min(bytes.length, (i + 1) * chunkSize));
+                Entity chunkEntity = new Entity(chunkKey(gaeEntity.getKey(), property, i));
+                chunkEntity.setUnindexedProperty(DATA, new Blob(chunk));
+                chunks.add(chunkEntity);
+            }
+            gaeEntity.setUnindexedProperty(property, marker(count, bytes.length));
+        }
+        return chunks;
+    }
+
+    private static Blob marker(int count, int length) {
+        return new Blob(ByteBuffer.allocate(MARKER_LENGTH).put(MARKER).putInt(count).putInt(length).array());
+    }
+
+    /**
+     * @param owner    key of the owner entity.
+     * @param property name of the chunked property.
+     * @param marker   the marker blob.
+     *
+     * @return the keys of the chunks, in order.
+     */
+    public static List<Key> chunkKeys(Key owner, String property, Blob marker) {
+        int count = ByteBuffer.wrap(marker.getBytes(), 1, 4).getInt();
+        List<Key> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(chunkKey(owner, property, i));
+        }
+        return keys;
+    }
+
+    /**
+     * @param gaeEntity an owner entity, as stored.
+     *
+     * @return the keys of the chunks of all the chunked properties of the entity.
+     */
+    public static List<Key> chunkKeys(Entity gaeEntity) {
+        List<Key> keys = new ArrayList<>();
+        for (Map.Entry<String, Object> property : gaeEntity.getProperties().entrySet()) {
+            if (property.getValue() instanceof Blob && isMarker((Blob) property.getValue())) {
+                keys.addAll(chunkKeys(gaeEntity.getKey(), property.getKey(), (Blob) property.getValue()));
+            }
+        }
+        return keys;
+    }
+
+    private static Key chunkKey(Key owner, String property, int index) {
+        return KeyFactory.createKey(owner, KIND, property + "#" + index);
+    }
+
+    /**
+     * Join the chunks of a value.
+     *
+     * @param marker the marker blob.
+     * @param chunks the chunk entities, in order.
+     *
+     * @return the original blob.
+     *
+     * @throws StreamCorruptedException if some chunk is missing.
+     */
+    public static Blob join(Blob marker, List<Entity> chunks) throws StreamCorruptedException {
+        int length = ByteBuffer.wrap(marker.getBytes(), 5, 4).getInt();
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (Entity chunk : chunks) {
+            if (chunk == null) {
+                throw new StreamCorruptedException("Missing chunk of a chunked value");
+            }
+            byte[] bytes = ((Blob) chunk.getProperty(DATA)).getBytes();
+            if (bytes.length > buffer.remaining()) {
+                throw new StreamCorruptedException("Chunks exceed the chunked value length");
+            }
+            buffer.put(bytes);
+        }
+        if (buffer.hasRemaining()) {
+            throw new StreamCorruptedException("Chunks do not fill the chunked value length");
+        }
+        return new Blob(buffer.array());
+    }
+}
@@ -0,0 +1,338 @@
+package it.polimi.kundera.client.datastore.serializer;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Compact binary serializer for collections and maps.
+ * <p/>
+ * Scalar values are written with a type tag and a compact encoding
+ * (variable length integers, length prefixed UTF-8 strings) and collection or map
+ * classes are written as a small id when registered, instead of the full class
+ * descriptors written by java serialization.
+ * <p/>
+ * Common collection and map implementations are registered by default, other
+ * classes can be registered at construction, their ids follow the built-in ones
+ * in registration order so new classes must only be appended to keep existing blobs readable.
+ * Values that cannot be encoded (e.g. arbitrary {@link java.io.Serializable} objects)
+ * are embedded using java serialization.
+ *
+ * @author Fabio Arcidiacono.
+ */
+public class CompactSerializer implements BlobSerializer {
+
+    public static final byte FORMAT = 0x02;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int LONG = 2;
+    private static final int INTEGER = 3;
+    private static final int SHORT = 4;
+    private static final int BYTE = 5;
+    private static final int CHARACTER = 6;
+    private static final int DOUBLE = 7;
+    private static final int FLOAT = 8;
+    private static final int TRUE = 9;
+    private static final int FALSE = 10;
+    private static final int DATE = 11;
+    private static final int BYTES = 12;
+    private static final int ENUM = 13;
+    private static final int COLLECTION = 14;
+    private static final int MAP = 15;
+    private static final int JAVA = 16;
+
+    /* class id 0 means the class name follows */
+    private static final int UNREGISTERED = 0;
+
+    private static final List<Class<?>> BUILT_IN_CLASSES = Collections.unmodifiableList(Arrays.<Class<?>>asList(
+            ArrayList.class, LinkedList.class, HashSet.class, LinkedHashSet.class, TreeSet.class,
+            HashMap.class, LinkedHashMap.class, TreeMap.class));
+
+    private final List<Class<?>> classes = new ArrayList<>();
+    private final Map<Class<?>, Integer> classIds = new HashMap<>();
+    private final JavaSerializer javaSerializer = new JavaSerializer();
+
+    public CompactSerializer() {
+        this(Collections.<Class<?>>emptyList());
+    }
+
+    /**
+     * @param registeredClasses additional collection or map classes to be written by id.
+     */
+    public CompactSerializer(List<Class<?>> registeredClasses) {
+        for (Class<?> clazz : BUILT_IN_CLASSES) {
+            register(clazz);
+        }
+        for (Class<?> clazz : registeredClasses) {
+            register(clazz);
+        }
+    }
+
+    private void register(Class<?> clazz) {
+        if (!classIds.containsKey(clazz)) {
+            classes.add(clazz);
+            classIds.put(clazz, classes.size());
+        }
+    }
+
+    @Override
+    public byte getFormat() {
+        return FORMAT;
+    }
+
+    @Override
+    public void serialize(Object obj, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        write(obj, data);
+        data.flush();
+    }
+
+    @Override
+    public Object deserialize(InputStream in) throws IOException, ClassNotFoundException {
+        return read(new DataInputStream(in));
+    }
+
+    /*---------------------------------------------------------------------------------*/
+    /*------------------------------------ WRITE --------------------------------------*/
+    /*---------------------------------------------------------------------------------*/
+
+    private void write(Object obj, DataOutputStream out) throws IOException {
+        if (obj == null) {
+            out.writeByte(NULL);
+        } else if (obj instanceof String) {
+            out.writeByte(STRING);
+            writeString((String) obj, out);
+        } else if (obj instanceof Long) {
+            out.writeByte(LONG);
+            writeVarLong((Long) obj, out);
+        } else if (obj instanceof Integer) {
+            out.writeByte(INTEGER);
+            writeVarLong((Integer) obj, out);
+        } else if (obj instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) obj);
+        } else if (obj instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) obj);
+        } else if (obj instanceof Character) {
+            out.writeByte(CHARACTER);
+            out.writeChar((Character) obj);
+        } else if (obj instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) obj);
+        } else if (obj instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) obj);
+        } else if (obj instanceof Boolean) {
+            out.writeByte((Boolean) obj ? TRUE : FALSE);
+        } else if (obj.getClass() == Date.class) {
+            out.writeByte(DATE);
+            writeVarLong(((Date) obj).getTime(), out);
+        } else if (obj instanceof byte[]) {
+            out.writeByte(BYTES);
+            writeBytes((byte[]) obj, out);
+        } else if (obj instanceof Enum) {
+            out.writeByte(ENUM);
+            writeClass(((Enum) obj).getDeclaringClass(), out);
+            writeString(((Enum) obj).name(), out);
+        } else if (obj instanceof Collection && isReconstructible(obj)) {
+            Collection<?> collection = (Collection<?>) obj;
+            out.writeByte(COLLECTION);
+            writeClass(obj.getClass(), out);
+            writeVarLong(collection.size(), out);
+            for (Object element : collection) {
+                write(element, out);
+            }
+        } else if (obj instanceof Map && isReconstructible(obj)) {
+            Map<?, ?> map = (Map<?, ?>) obj;
+            out.writeByte(MAP);
+            writeClass(obj.getClass(), out);
+            writeVarLong(map.size(), out);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                write(entry.getKey(), out);
+                write(entry.getValue(), out);
+            }
+        } else {
+            out.writeByte(JAVA);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            javaSerializer.serialize(obj, bytes);
+            writeBytes(bytes.toByteArray(), out);
+        }
+    }
+
+    /*
+     * collections and maps are rebuilt through their no-arg constructor,
+     * sorted ones with a custom comparator would lose it.
+     */
+    private boolean isReconstructible(Object obj) {
+        if (obj instanceof SortedSet && ((SortedSet) obj).comparator() != null) {
+            return false;
+        }
+        if (obj instanceof SortedMap && ((SortedMap) obj).comparator() != null) {
+            return false;
+        }
+        if (classIds.containsKey(obj.getClass())) {
+            return true;
+        }
+        try {
+            return obj.getClass().getConstructor() != null;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private void writeClass(Class<?> clazz, DataOutputStream out) throws IOException {
+        Integer id = classIds.get(clazz);
+        if (id != null) {
+            writeVarLong(id, out);
+        } else {
+            writeVarLong(UNREGISTERED, out);
+            writeString(clazz.getName(), out);
+        }
+    }
+
+    private void writeString(String value, DataOutputStream out) throws IOException {
+        writeBytes(value.getBytes(UTF8), out);
+    }
+
+    private void writeBytes(byte[] value, DataOutputStream out) throws IOException {
+        writeVarLong(value.length, out);
+        out.write(value);
+    }
+
+    /* zig-zag encoded variable length integer */
+    private void writeVarLong(long value, DataOutputStream out) throws IOException {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    /*---------------------------------------------------------------------------------*/
+    /*------------------------------------- READ --------------------------------------*/
+    /*---------------------------------------------------------------------------------*/
+
+    private Object read(DataInputStream in) throws IOException, ClassNotFoundException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case LONG:
+                return readVarLong(in);
+            case INTEGER:
+                return (int) readVarLong(in);
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case CHARACTER:
+                return in.readChar();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case DATE:
+                return new Date(readVarLong(in));
+            case BYTES:
+                return readBytes(in);
+            case ENUM:
+                return readEnum(in);
+            case COLLECTION:
+                return readCollection(in);
+            case MAP:
+                return readMap(in);
+            case JAVA:
+                return javaSerializer.deserialize(new ByteArrayInputStream(readBytes(in)));
+            default:
+                throw new StreamCorruptedException("Unknown type tag " + tag);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readEnum(DataInputStream in) throws IOException, ClassNotFoundException {
+        Class enumClass = readClass(in);
+        return Enum.valueOf(enumClass, readString(in));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readCollection(DataInputStream in) throws IOException, ClassNotFoundException {
+        Collection<Object> collection = (Collection<Object>) newInstance(readClass(in));
+        long size = readVarLong(in);
+        for (long i = 0; i < size; i++) {
+            collection.add(read(in));
+        }
+        return collection;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readMap(DataInputStream in) throws IOException, ClassNotFoundException {
+        Map<Object, Object> map = (Map<Object, Object>) newInstance(readClass(in));
+        long size = readVarLong(in);
+        for (long i = 0; i < size; i++) {
+            Object key = read(in);
+            map.put(key, read(in));
+        }
+        return map;
+    }
+
+    private Object newInstance(Class<?> clazz) throws IOException {
+        try {
+            return clazz.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new InvalidClassException(clazz.getName(), "unable to instantiate: " + e.getMessage());
+        }
+    }
+
+    private Class<?> readClass(DataInputStream in) throws IOException, ClassNotFoundException {
+        int id = (int) readVarLong(in);
+        if (id == UNREGISTERED) {
+            String name = readString(in);
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            return Class.forName(name, false, loader != null ? loader : getClass().getClassLoader());
+        }
+        if (id < 0 || id > classes.size()) {
+            throw new StreamCorruptedException("Unknown class id " + id + ", registered classes may have changed");
+        }
+        return classes.get(id - 1);
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), UTF8);
+    }
+
+    private byte[] readBytes(DataInputStream in) throws IOException {
+        int length = (int) readVarLong(in);
+        if (length < 0) {
+            throw new StreamCorruptedException("Invalid length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift > 63) {
+                throw new StreamCorruptedException("Malformed variable length integer");
+            }
+            b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
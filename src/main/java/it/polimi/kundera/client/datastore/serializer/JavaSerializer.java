@@ -0,0 +1,32 @@
+package it.polimi.kundera.client.datastore.serializer;
+
+import java.io.*;
+
+/**
+ * Serializer based on java serialization, the one used before serializers were pluggable.
+ *
+ * @author Fabio Arcidiacono.
+ * @see java.io.ObjectOutputStream
+ */
+public class JavaSerializer implements BlobSerializer {
+
+    public static final byte FORMAT = 0x01;
+
+    @Override
+    public byte getFormat() {
+        return FORMAT;
+    }
+
+    @Override
+    public void serialize(Object obj, OutputStream out) throws IOException {
+        ObjectOutputStream o = new ObjectOutputStream(out);
+        o.writeObject(obj);
+        o.flush();
+    }
+
+    @Override
+    public Object deserialize(InputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream o = new ObjectInputStream(in);
+        return o.readObject();
+    }
+}
@@ -0,0 +1,87 @@
+package it.polimi.kundera.client.datastore.serializer;
+
+import com.google.appengine.api.datastore.Blob;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link java.util.List} deserialized on first access.
+ * <p/>
+ * When created through the no-arg constructor it behaves as a plain list.
+ *
+ * @author Fabio Arcidiacono.
+ * @see it.polimi.kundera.client.datastore.serializer.LazyValues
+ */
+public class LazyList<E> extends AbstractList<E> implements LazyValue, Serializable {
+
+    private transient LazyValues.Loader loader;
+    private List<E> delegate;
+
+    public LazyList() {
+        this.delegate = new ArrayList<>();
+    }
+
+    LazyList(LazyValues.Loader loader) {
+        this.loader = loader;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<E> delegate() {
+        if (delegate == null) {
+            delegate = loader.load(List.class);
+            loader = null;
+        }
+        return delegate;
+    }
+
+    @Override
+    public boolean isLoaded() {
+        return delegate != null;
+    }
+
+    @Override
+    public Blob getBlob() {
+        return isLoaded() ? null : loader.getBlob();
+    }
+
+    @Override
+    public Object getValue() {
+        return delegate();
+    }
+
+    @Override
+    public E get(int index) {
+        return delegate().get(index);
+    }
+
+    @Override
+    public E set(int index, E element) {
+        return delegate().set(index, element);
+    }
+
+    @Override
+    public void add(int index, E element) {
+        delegate().add(index, element);
+        modCount++;
+    }
+
+    @Override
+    public E remove(int index) {
+        modCount++;
+        return delegate().remove(index);
+    }
+
+    @Override
+    public int size() {
+        return delegate().size();
+    }
+
+    /* serialized as the deserialized list itself */
+    private Object writeReplace() throws ObjectStreamException {
+        return delegate();
+    }
+}
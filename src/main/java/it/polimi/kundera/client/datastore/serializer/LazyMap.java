@@ -0,0 +1,96 @@
+package it.polimi.kundera.client.datastore.serializer;
+
+import com.google.appengine.api.datastore.Blob;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link java.util.Map} deserialized on first access.
+ * <p/>
+ * When created through the no-arg constructor it behaves as a plain map.
+ *
+ * @author Fabio Arcidiacono.
+ * @see it.polimi.kundera.client.datastore.serializer.LazyValues
+ */
+public class LazyMap<K, V> extends AbstractMap<K, V> implements LazyValue, Serializable {
+
+    private transient LazyValues.Loader loader;
+    private Map<K, V> delegate;
+
+    public LazyMap() {
+        this.delegate = new HashMap<>();
+    }
+
+    LazyMap(LazyValues.Loader loader) {
+        this.loader = loader;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<K, V> delegate() {
+        if (delegate == null) {
+            delegate = loader.load(Map.class);
+            loader = null;
+        }
+        return delegate;
+    }
+
+    @Override
+    public boolean isLoaded() {
+        return delegate != null;
+    }
+
+    @Override
+    public Blob getBlob() {
+        return isLoaded() ? null : loader.getBlob();
+    }
+
+    @Override
+    public Object getValue() {
+        return delegate();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return delegate().entrySet();
+    }
+
+    @Override
+    public int size() {
+        return delegate().size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return delegate().containsKey(key);
+    }
+
+    @Override
+    public V get(Object key) {
+        return delegate().get(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return delegate().put(key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return delegate().remove(key);
+    }
+
+    @Override
+    public void clear() {
+        delegate().clear();
+    }
+
+    /* serialized as the deserialized map itself */
+    private Object writeReplace() throws ObjectStreamException {
+        return delegate();
+    }
+}
@@ -0,0 +1,91 @@
+package it.polimi.kundera.client.datastore.serializer;
+
+import com.google.appengine.api.datastore.Blob;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * {@link java.util.Set} deserialized on first access.
+ * <p/>
+ * When created through the no-arg constructor it behaves as a plain set.
+ *
+ * @author Fabio Arcidiacono.
+ * @see it.polimi.kundera.client.datastore.serializer.LazyValues
+ */
+public class LazySet<E> extends AbstractSet<E> implements LazyValue, Serializable {
+
+    private transient LazyValues.Loader loader;
+    private Set<E> delegate;
+
+    public LazySet() {
+        this.delegate = new HashSet<>();
+    }
+
+    LazySet(LazyValues.Loader loader) {
+        this.loader = loader;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<E> delegate() {
+        if (delegate == null) {
+            delegate = loader.load(Set.class);
+            loader = null;
+        }
+        return delegate;
+    }
+
+    @Override
+    public boolean isLoaded() {
+        return delegate != null;
+    }
+
+    @Override
+    public Blob getBlob() {
+        return isLoaded() ? null : loader.getBlob();
+    }
+
+    @Override
+    public Object getValue() {
+        return delegate();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return delegate().iterator();
+    }
+
+    @Override
+    public int size() {
+        return delegate().size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return delegate().contains(o);
+    }
+
+    @Override
+    public boolean add(E e) {
+        return delegate().add(e);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return delegate().remove(o);
+    }
+
+    @Override
+    public void clear() {
+        delegate().clear();
+    }
+
+    /* serialized as the deserialized set itself */
+    private Object writeReplace() throws ObjectStreamException {
+        return delegate();
+    }
+}
@@ -0,0 +1,28 @@
+package it.polimi.kundera.client.datastore.serializer;
+
+import com.google.appengine.api.datastore.Blob;
+
+/**
+ * A collection or map whose content is deserialized from a
+ * {@link com.google.appengine.api.datastore.Blob} on first access.
+ *
+ * @author Fabio Arcidiacono.
+ * @see it.polimi.kundera.client.datastore.serializer.LazyValues
+ */
+public interface LazyValue {
+
+    /**
+     * @return {@code true} if the content has already been deserialized or modified.
+     */
+    boolean isLoaded();
+
+    /**
+     * @return the blob the content is read from, {@code null} once loaded.
+     */
+    Blob getBlob();
+
+    /**
+     * @return the deserialized content, loading it if needed.
+     */
+    Object getValue();
+}
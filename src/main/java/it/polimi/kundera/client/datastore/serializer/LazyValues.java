@@ -0,0 +1,89 @@
+package it.polimi.kundera.client.datastore.serializer;
+
+import com.google.appengine.api.datastore.Blob;
+import com.impetus.kundera.KunderaException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates lazily deserialized collections and maps.
+ * <p/>
+ * Only fields declared as {@link java.util.List}, {@link java.util.Set} or {@link java.util.Map}
+ * can hold a lazy value, for any other type the blob has to be deserialized eagerly.
+ *
+ * @author Fabio Arcidiacono.
+ * @see it.polimi.kundera.client.datastore.serializer.LazyValue
+ */
+public final class LazyValues {
+
+    private LazyValues() {
+    }
+
+    /**
+     * @param fieldType the declared type of the field.
+     *
+     * @return {@code true} if a lazy value can be assigned to a field of the given type.
+     */
+    public static boolean isSupported(Class<?> fieldType) {
+        return fieldType == List.class || fieldType == Set.class || fieldType == Map.class;
+    }
+
+    /**
+     * Wrap a blob in a lazy value assignable to the given field type.
+     *
+     * @param fieldType the declared type of the field, see {@link #isSupported(Class)}.
+     * @param blob      the blob holding the serialized value.
+     * @param codec     the codec used to deserialize the blob.
+     *
+     * @return the lazy value.
+     */
+    public static Object wrap(Class<?> fieldType, Blob blob, BlobCodec codec) {
+        Loader loader = new Loader(blob, codec);
+        if (fieldType == List.class) {
+            return new LazyList<>(loader);
+        }
+        if (fieldType == Set.class) {
+            return new LazySet<>(loader);
+        }
+        if (fieldType == Map.class) {
+            return new LazyMap<>(loader);
+        }
+        throw new IllegalArgumentException("Lazy values are not supported for " + fieldType.getName());
+    }
+
+    /**
+     * Deserialize the blob at most once, when first asked.
+     */
+    static final class Loader {
+
+        private Blob blob;
+        private BlobCodec codec;
+
+        Loader(Blob blob, BlobCodec codec) {
+            this.blob = blob;
+            this.codec = codec;
+        }
+
+        Blob getBlob() {
+            return blob;
+        }
+
+        <T> T load(Class<T> type) {
+            try {
+                Object value = codec.deserialize(blob);
+                if (!type.isInstance(value)) {
+                    throw new KunderaException("Deserialized value is a " + (value == null ? "null" : value.getClass().getName())
+                            + ", expected " + type.getName());
+                }
+                blob = null;
+                codec = null;
+                return type.cast(value);
+            } catch (ClassNotFoundException | IOException e) {
+                throw new KunderaException("Some errors occurred while deserializing the object: ", e);
+            }
+        }
+    }
+}
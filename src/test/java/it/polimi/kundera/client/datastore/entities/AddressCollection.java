@@ -19,6 +19,9 @@ public class AddressCollection {
     @Column(name = "ADDRESS_ID")
     private String id;
 
+    @Column(name = "CITY")
+    private String city;
+
     @ElementCollection
     private List<String> streets;
 
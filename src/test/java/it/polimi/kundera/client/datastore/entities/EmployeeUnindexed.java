@@ -0,0 +1,26 @@
+package it.polimi.kundera.client.datastore.entities;
+
+import it.polimi.kundera.client.datastore.annotations.Unindexed;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "EmployeeUnindexed", schema = "gae-test@pu")
+public class EmployeeUnindexed {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    @Column(name = "EMPLOYEE_ID")
+    private String id;
+
+    @Column(name = "NAME")
+    private String name;
+
+    @Unindexed
+    @Column(name = "NOTES")
+    private String notes;
+}
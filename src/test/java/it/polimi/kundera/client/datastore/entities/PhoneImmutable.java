@@ -0,0 +1,31 @@
+package it.polimi.kundera.client.datastore.entities;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+/* fields are only written through field access, there are no setters */
+@Getter
+@NoArgsConstructor
+@Entity
+@Table(name = "PhoneImmutable", schema = "gae-test@pu")
+public class PhoneImmutable {
+
+    @Id
+    @Column(name = "PHONE_ID")
+    private String id;
+
+    @Column(name = "NUMBER")
+    private Long number;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "TYPE")
+    private PhoneType type;
+
+    public PhoneImmutable(String id, Long number, PhoneType type) {
+        this.id = id;
+        this.number = number;
+        this.type = type;
+    }
+}
@@ -0,0 +1,58 @@
+package it.polimi.kundera.client.datastore.tests;
+
+import it.polimi.kundera.client.datastore.entities.Employee;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Fabio Arcidiacono.
+ */
+public class AsyncTest extends TestBase {
+
+    @Override
+    protected String getClientProperties() {
+        return "datastore-async-properties.xml";
+    }
+
+    @Test
+    public void testAsyncCRUD() {
+        print("create");
+        List<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Employee employee = new Employee();
+            employee.setName("Employee " + i);
+            employee.setSalary((long) i);
+            em.persist(employee);
+            employees.add(employee);
+        }
+        /* writes are completed when the entity manager flushes */
+        em.flush();
+        Assert.assertEquals(employees.size(), count("Employee"));
+        clear();
+
+        print("read");
+        for (Employee employee : employees) {
+            Employee foundEmployee = em.find(Employee.class, employee.getId());
+            Assert.assertNotNull(foundEmployee);
+            Assert.assertEquals(employee.getName(), foundEmployee.getName());
+        }
+
+        print("update");
+        Employee employee = employees.get(0);
+        employee.setName("Fabio");
+        em.merge(employee);
+        em.flush();
+        clear();
+        Assert.assertEquals("Fabio", em.find(Employee.class, employee.getId()).getName());
+
+        print("delete");
+        for (Employee emp : employees) {
+            em.remove(em.find(Employee.class, emp.getId()));
+        }
+        em.flush();
+        Assert.assertEquals(0, count("Employee"));
+    }
+}
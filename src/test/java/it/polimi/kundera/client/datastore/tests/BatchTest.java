@@ -0,0 +1,69 @@
+package it.polimi.kundera.client.datastore.tests;
+
+import it.polimi.kundera.client.datastore.entities.Employee;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Fabio Arcidiacono.
+ */
+public class BatchTest extends TestBase {
+
+    private static final int BATCH_SIZE = 10;
+
+    @Override
+    protected int getBatchSize() {
+        return BATCH_SIZE;
+    }
+
+    @Test
+    public void testBatchCRUD() {
+        print("create");
+        List<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < 2 * BATCH_SIZE + 5; i++) {
+            Employee employee = new Employee();
+            employee.setName("Employee " + i);
+            employee.setSalary((long) i);
+            em.persist(employee);
+            employees.add(employee);
+        }
+        em.flush();
+        Assert.assertEquals(employees.size(), count("Employee"));
+        clear();
+
+        print("read");
+        for (Employee employee : employees) {
+            Employee foundEmployee = em.find(Employee.class, employee.getId());
+            Assert.assertNotNull(foundEmployee);
+            Assert.assertEquals(employee.getName(), foundEmployee.getName());
+            Assert.assertEquals(employee.getSalary(), foundEmployee.getSalary());
+        }
+
+        print("update");
+        for (Employee employee : employees) {
+            employee.setSalary(employee.getSalary() * 10);
+            em.merge(employee);
+        }
+        em.flush();
+        clear();
+        for (Employee employee : employees) {
+            Employee foundEmployee = em.find(Employee.class, employee.getId());
+            Assert.assertNotNull(foundEmployee);
+            Assert.assertEquals(employee.getSalary(), foundEmployee.getSalary());
+        }
+
+        print("delete");
+        for (Employee employee : employees) {
+            em.remove(em.find(Employee.class, employee.getId()));
+        }
+        em.flush();
+        Assert.assertEquals(0, count("Employee"));
+        clear();
+        for (Employee employee : employees) {
+            Assert.assertNull(em.find(Employee.class, employee.getId()));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package it.polimi.kundera.client.datastore.tests;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.KeyFactory;
+import it.polimi.kundera.client.datastore.entities.Phone;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Fabio Arcidiacono.
+ */
+public class CacheTest extends TestBase {
+
+    @Override
+    protected String getClientProperties() {
+        return "datastore-cache-properties.xml";
+    }
+
+    @Test
+    public void testCache() throws EntityNotFoundException {
+        print("create");
+        Phone phone = new Phone();
+        phone.setNumber(123456789L);
+        em.persist(phone);
+        String phnId = phone.getId();
+        clear();
+
+        print("read and cache");
+        Phone foundPhone = em.find(Phone.class, phnId);
+        Assert.assertEquals((Long) 123456789L, foundPhone.getNumber());
+        clear();
+
+        print("update behind the cache");
+        Entity gaeEntity = datastore.get(KeyFactory.createKey("Phone", phnId));
+        gaeEntity.setProperty("NUMBER", 111111111L);
+        datastore.put(gaeEntity);
+
+        print("read from cache");
+        foundPhone = em.find(Phone.class, phnId);
+        Assert.assertEquals((Long) 123456789L, foundPhone.getNumber());
+
+        print("update evicts");
+        foundPhone.setNumber(987654321L);
+        em.merge(foundPhone);
+        clear();
+        foundPhone = em.find(Phone.class, phnId);
+        Assert.assertEquals((Long) 987654321L, foundPhone.getNumber());
+
+        print("delete evicts");
+        em.remove(foundPhone);
+        clear();
+        Assert.assertNull(em.find(Phone.class, phnId));
+    }
+}
@@ -0,0 +1,73 @@
+package it.polimi.kundera.client.datastore.tests;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.KeyFactory;
+import it.polimi.kundera.client.datastore.entities.AddressCollection;
+import it.polimi.kundera.client.datastore.serializer.ChunkedBlob;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs {@link ElementCollectionTest} splitting large serialized values in chunks.
+ *
+ * @author Fabio Arcidiacono.
+ */
+public class ChunkTest extends ElementCollectionTest {
+
+    @Override
+    protected String getClientProperties() {
+        return "datastore-chunk-properties.xml";
+    }
+
+    @Test
+    public void testChunks() throws EntityNotFoundException {
+        print("create");
+        List<String> streets = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            streets.add("Street " + i);
+        }
+        AddressCollection address = new AddressCollection();
+        address.setStreets(streets.toArray(new String[streets.size()]));
+        em.persist(address);
+        String adrId = address.getId();
+        clear();
+
+        print("check stored entity");
+        Blob marker = (Blob) datastore.get(KeyFactory.createKey("AddressCollection", adrId)).getProperty("streets");
+        Assert.assertTrue(ChunkedBlob.isMarker(marker));
+        int chunks = count(ChunkedBlob.KIND);
+        Assert.assertTrue(chunks > 1);
+
+        print("read");
+        AddressCollection foundAddress = em.find(AddressCollection.class, adrId);
+        Assert.assertEquals(streets, foundAddress.getStreets());
+
+        print("update with fewer chunks");
+        foundAddress.setStreets(streets.subList(0, 150).toArray(new String[150]));
+        em.merge(foundAddress);
+        Assert.assertTrue(count(ChunkedBlob.KIND) < chunks);
+        clear();
+        Assert.assertEquals(streets.subList(0, 150), em.find(AddressCollection.class, adrId).getStreets());
+
+        print("update without chunks");
+        foundAddress = em.find(AddressCollection.class, adrId);
+        foundAddress.setStreets("Street 1");
+        em.merge(foundAddress);
+        Assert.assertEquals(0, count(ChunkedBlob.KIND));
+        clear();
+        Assert.assertEquals("Street 1", em.find(AddressCollection.class, adrId).getStreets().get(0));
+
+        print("delete");
+        foundAddress = em.find(AddressCollection.class, adrId);
+        foundAddress.setStreets(streets.toArray(new String[streets.size()]));
+        em.merge(foundAddress);
+        Assert.assertEquals(chunks, count(ChunkedBlob.KIND));
+        em.remove(foundAddress);
+        Assert.assertEquals(0, count(ChunkedBlob.KIND));
+        Assert.assertNull(em.find(AddressCollection.class, adrId));
+    }
+}
@@ -0,0 +1,60 @@
+package it.polimi.kundera.client.datastore.tests;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.KeyFactory;
+import it.polimi.kundera.client.datastore.entities.AddressCollection;
+import it.polimi.kundera.client.datastore.serializer.CompactSerializer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Runs {@link ElementCollectionTest} with the compact serializer.
+ *
+ * @author Fabio Arcidiacono.
+ */
+public class CompactSerializerTest extends ElementCollectionTest {
+
+    @Override
+    protected String getClientProperties() {
+        return "datastore-compact-properties.xml";
+    }
+
+    @Test
+    public void testCompactFormat() throws EntityNotFoundException {
+        print("create");
+        AddressCollection address = new AddressCollection();
+        address.setStreets("Street 1", "Street 2", "Street 3");
+        em.persist(address);
+        String adrId = address.getId();
+
+        print("check stored entity");
+        Entity gaeEntity = datastore.get(KeyFactory.createKey("AddressCollection", adrId));
+        Blob blob = (Blob) gaeEntity.getProperty("streets");
+        Assert.assertEquals(CompactSerializer.FORMAT, blob.getBytes()[0]);
+    }
+
+    @Test
+    public void testReadJavaSerialized() throws IOException {
+        print("create with java serialization");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(new ArrayList<>(Arrays.asList("Street 1", "Street 2")));
+        out.close();
+        Entity gaeEntity = new Entity("AddressCollection", "address 1");
+        gaeEntity.setUnindexedProperty("streets", new Blob(bytes.toByteArray()));
+        datastore.put(gaeEntity);
+
+        print("read");
+        AddressCollection foundAddress = em.find(AddressCollection.class, "address 1");
+        Assert.assertNotNull(foundAddress);
+        Assert.assertEquals(Arrays.asList("Street 1", "Street 2"), foundAddress.getStreets());
+    }
+}
@@ -0,0 +1,57 @@
+package it.polimi.kundera.client.datastore.tests;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.KeyFactory;
+import it.polimi.kundera.client.datastore.entities.AddressCollection;
+import it.polimi.kundera.client.datastore.serializer.BlobCodec;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs {@link ElementCollectionTest} compressing serialized values.
+ *
+ * @author Fabio Arcidiacono.
+ */
+public class CompressionTest extends ElementCollectionTest {
+
+    @Override
+    protected String getClientProperties() {
+        return "datastore-compression-properties.xml";
+    }
+
+    @Test
+    public void testCompression() throws EntityNotFoundException {
+        print("create");
+        List<String> streets = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            streets.add("Street " + i);
+        }
+        AddressCollection large = new AddressCollection();
+        large.setStreets(streets.toArray(new String[streets.size()]));
+        em.persist(large);
+
+        AddressCollection small = new AddressCollection();
+        small.setStreets("Street 1");
+        em.persist(small);
+
+        String largeId = large.getId();
+        String smallId = small.getId();
+        clear();
+
+        print("check stored entities");
+        Blob largeBlob = (Blob) datastore.get(KeyFactory.createKey("AddressCollection", largeId)).getProperty("streets");
+        Assert.assertTrue((largeBlob.getBytes()[0] & BlobCodec.COMPRESSED) != 0);
+        /* each street takes at least 10 bytes when not compressed */
+        Assert.assertTrue(largeBlob.getBytes().length < streets.size() * 10);
+        Blob smallBlob = (Blob) datastore.get(KeyFactory.createKey("AddressCollection", smallId)).getProperty("streets");
+        Assert.assertTrue((smallBlob.getBytes()[0] & BlobCodec.COMPRESSED) == 0);
+
+        print("read");
+        Assert.assertEquals(streets, em.find(AddressCollection.class, largeId).getStreets());
+        Assert.assertEquals("Street 1", em.find(AddressCollection.class, smallId).getStreets().get(0));
+    }
+}
@@ -0,0 +1,74 @@
+package it.polimi.kundera.client.datastore.tests;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import it.polimi.kundera.client.datastore.entities.EmployeeMTM;
+import it.polimi.kundera.client.datastore.entities.ProjectMTM;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Runs {@link DatastoreMTMTest} with derived join table keys.
+ *
+ * @author Fabio Arcidiacono.
+ */
+public class DatastoreMTMDerivedKeysTest extends DatastoreMTMTest {
+
+    @Override
+    protected String getClientProperties() {
+        return "datastore-derived-properties.xml";
+    }
+
+    @Test
+    public void testDerivedKeys() {
+        print("create");
+        ProjectMTM project1 = new ProjectMTM();
+        project1.setName("Project 1");
+
+        ProjectMTM project2 = new ProjectMTM();
+        project2.setName("Project 2");
+
+        EmployeeMTM employee = new EmployeeMTM();
+        employee.setName("Fabio");
+        employee.setSalary(123L);
+        employee.addProjects(project1, project2);
+        em.persist(employee);
+
+        String empId = employee.getId();
+        String prj1Id = project1.getId();
+        String prj2Id = project2.getId();
+
+        print("check keys");
+        List<Entity> rows = datastore.prepare(new Query("EMPLOYEE_PROJECT")).asList(FetchOptions.Builder.withDefaults());
+        Assert.assertEquals(2, rows.size());
+        for (Entity row : rows) {
+            Assert.assertNull(row.getKey().getParent());
+            Assert.assertEquals(empId + "|" + row.getProperty("PROJECT_ID"), row.getKey().getName());
+        }
+
+        print("write links again");
+        employee.setSalary(456L);
+        em.merge(employee);
+        Assert.assertEquals(2, count("EMPLOYEE_PROJECT"));
+        clear();
+
+        print("read");
+        EmployeeMTM foundEmployee = em.find(EmployeeMTM.class, empId);
+        Assert.assertNotNull(foundEmployee);
+        Assert.assertEquals(2, foundEmployee.getProjects().size());
+        int projectCount = 2;
+        for (ProjectMTM project : foundEmployee.getProjects()) {
+            if (project.getId().equals(prj1Id) || project.getId().equals(prj2Id)) {
+                projectCount--;
+            }
+        }
+        Assert.assertEquals(0, projectCount);
+
+        print("delete");
+        em.remove(foundEmployee);
+        Assert.assertEquals(0, count("EMPLOYEE_PROJECT"));
+    }
+}
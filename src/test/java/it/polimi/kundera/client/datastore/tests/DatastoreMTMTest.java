@@ -6,7 +6,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import javax.persistence.TypedQuery;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @author Fabio Arcidiacono.
@@ -378,4 +380,56 @@ public class DatastoreMTMTest extends TestBase {
         em.remove(employee1);
         em.remove(employee2);
     }
+
+    @Test
+    public void testManyLinks() {
+        print("create");
+        EmployeeMTM employee = new EmployeeMTM();
+        employee.setName("Fabio");
+        employee.setSalary(123L);
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < 30; i++) {
+            ProjectMTM project = new ProjectMTM();
+            project.setName("Project " + i);
+            employee.addProjects(project);
+            names.add(project.getName());
+        }
+        em.persist(employee);
+        String empId = employee.getId();
+        Assert.assertEquals(30, count("EMPLOYEE_PROJECT"));
+        clear();
+
+        print("read");
+        EmployeeMTM foundEmployee = em.find(EmployeeMTM.class, empId);
+        Assert.assertNotNull(foundEmployee);
+        Assert.assertEquals(30, foundEmployee.getProjects().size());
+        for (ProjectMTM project : foundEmployee.getProjects()) {
+            Assert.assertTrue(names.remove(project.getName()));
+        }
+        Assert.assertTrue(names.isEmpty());
+    }
+
+    @Test
+    public void testRemoveManyLinks() {
+        print("create");
+        EmployeeMTM employee = new EmployeeMTM();
+        employee.setName("Fabio");
+        employee.setSalary(123L);
+        for (int i = 0; i < 30; i++) {
+            ProjectMTM project = new ProjectMTM();
+            project.setName("Project " + i);
+            employee.addProjects(project);
+        }
+        em.persist(employee);
+        String empId = employee.getId();
+        Assert.assertEquals(30, count("EMPLOYEE_PROJECT"));
+        clear();
+
+        print("delete");
+        /* projects are removed in cascade together with the join table rows */
+        em.remove(em.find(EmployeeMTM.class, empId));
+        Assert.assertEquals(0, count("EMPLOYEE_PROJECT"));
+        Assert.assertEquals(0, count("ProjectMTM"));
+        Assert.assertNull(em.find(EmployeeMTM.class, empId));
+    }
 }
@@ -0,0 +1,15 @@
+package it.polimi.kundera.client.datastore.tests;
+
+/**
+ * Runs {@link DatastoreOTMTest} reading related entities with a single query
+ * instead of a keys-only query followed by a batch get.
+ *
+ * @author Fabio Arcidiacono.
+ */
+public class DatastoreOTMQueryTest extends DatastoreOTMTest {
+
+    @Override
+    protected String getClientProperties() {
+        return "datastore-relation-query-properties.xml";
+    }
+}
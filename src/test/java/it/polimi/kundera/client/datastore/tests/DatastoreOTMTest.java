@@ -6,7 +6,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import javax.persistence.TypedQuery;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @author Fabio Arcidiacono.
@@ -181,4 +183,34 @@ public class DatastoreOTMTest extends TestBase {
         em.remove(employee1);
         em.remove(employee2);
     }
+
+    @Test
+    public void testManyEmployees() {
+        print("create");
+        DepartmentOTM department = new DepartmentOTM();
+        department.setName("Computer Science");
+        em.persist(department);
+
+        Set<String> empIds = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            EmployeeMTObis employee = new EmployeeMTObis();
+            employee.setName("Employee " + i);
+            employee.setSalary((long) i);
+            employee.setDepartment(department);
+            em.persist(employee);
+            empIds.add(employee.getId());
+        }
+        String depId = department.getId();
+        clear();
+
+        print("read");
+        DepartmentOTM foundDepartment = em.find(DepartmentOTM.class, depId);
+        Assert.assertNotNull(foundDepartment);
+        Assert.assertEquals(20, foundDepartment.getEmployees().size());
+        for (EmployeeMTObis emp : foundDepartment.getEmployees()) {
+            Assert.assertEquals(depId, emp.getDepartment().getId());
+            Assert.assertTrue(empIds.remove(emp.getId()));
+        }
+        Assert.assertTrue(empIds.isEmpty());
+    }
 }
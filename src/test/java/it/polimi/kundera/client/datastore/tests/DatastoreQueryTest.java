@@ -4,11 +4,16 @@ import com.impetus.kundera.KunderaException;
 import it.polimi.kundera.client.datastore.entities.Employee;
 import it.polimi.kundera.client.datastore.entities.PhoneEnum;
 import it.polimi.kundera.client.datastore.entities.PhoneType;
+import it.polimi.kundera.client.datastore.query.DatastoreQuery;
+import it.polimi.kundera.client.datastore.query.ResultIterator;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @author Fabio Arcidiacono.
@@ -312,4 +317,194 @@ public class DatastoreQueryTest extends TestBase {
         Assert.assertNotNull(allEmployees);
         Assert.assertTrue(allEmployees.isEmpty());
     }
+
+    @Test
+    public void testIterate() {
+        print("create");
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            Employee employee = new Employee();
+            employee.setName("Employee " + i);
+            employee.setSalary((long) i);
+            em.persist(employee);
+            ids.add(employee.getId());
+        }
+        clear();
+
+        print("iterate");
+        DatastoreQuery query = (DatastoreQuery) em.createQuery("SELECT e FROM Employee e ORDER BY e.salary");
+        ResultIterator<Employee> iterator = (ResultIterator<Employee>) query.iterate();
+        Assert.assertNull(iterator.getCursor());
+        for (int i = 0; i < 2; i++) {
+            Assert.assertTrue(iterator.hasNext());
+            Employee employee = iterator.next();
+            Assert.assertEquals((Long) (long) i, employee.getSalary());
+            Assert.assertTrue(ids.remove(employee.getId()));
+        }
+        String cursor = iterator.getWebSafeCursor();
+        Assert.assertNotNull(cursor);
+
+        print("resume from cursor");
+        query = (DatastoreQuery) em.createQuery("SELECT e FROM Employee e ORDER BY e.salary");
+        iterator = (ResultIterator<Employee>) query.setStartCursor(cursor).iterate();
+        long salary = 2;
+        while (iterator.hasNext()) {
+            Employee employee = iterator.next();
+            Assert.assertEquals((Long) salary++, employee.getSalary());
+            Assert.assertTrue(ids.remove(employee.getId()));
+        }
+        Assert.assertTrue(ids.isEmpty());
+    }
+
+    @Test
+    public void testPagination() {
+        print("create");
+        for (int i = 0; i < 6; i++) {
+            Employee employee = new Employee();
+            employee.setName("Employee " + i);
+            employee.setSalary((long) i);
+            em.persist(employee);
+        }
+        clear();
+
+        print("paginate");
+        long salary = 0;
+        for (int page = 0; page < 3; page++) {
+            Query query = em.createQuery("SELECT e FROM Employee e ORDER BY e.salary")
+                    .setFirstResult(page * 2)
+                    .setMaxResults(2);
+            List<Employee> employees = query.getResultList();
+            Assert.assertEquals(2, employees.size());
+            for (Employee employee : employees) {
+                Assert.assertEquals((Long) salary++, employee.getSalary());
+            }
+        }
+
+        print("page again");
+        List<Employee> employees = em.createQuery("SELECT e FROM Employee e ORDER BY e.salary")
+                .setFirstResult(4)
+                .setMaxResults(10)
+                .getResultList();
+        Assert.assertEquals(2, employees.size());
+        Assert.assertEquals((Long) 4L, employees.get(0).getSalary());
+    }
+
+    @Test
+    public void testManyResults() {
+        print("create");
+        for (int i = 0; i < 50; i++) {
+            Employee employee = new Employee();
+            employee.setName("Employee " + i);
+            employee.setSalary((long) i);
+            em.persist(employee);
+        }
+        clear();
+
+        print("select all");
+        List<Employee> employees = em.createQuery("SELECT e FROM Employee e ORDER BY e.salary DESC", Employee.class)
+                .getResultList();
+        Assert.assertEquals(50, employees.size());
+        long salary = 49;
+        for (Employee employee : employees) {
+            Assert.assertEquals((Long) salary--, employee.getSalary());
+        }
+
+        print("limit");
+        employees = em.createQuery("SELECT e FROM Employee e WHERE e.salary >= :s ORDER BY e.salary", Employee.class)
+                .setParameter("s", 10L)
+                .setMaxResults(20)
+                .getResultList();
+        Assert.assertEquals(20, employees.size());
+        Assert.assertEquals((Long) 10L, employees.get(0).getSalary());
+        Assert.assertEquals((Long) 29L, employees.get(19).getSalary());
+    }
+
+    @Test
+    public void testQueryPlans() {
+        print("create");
+        for (int i = 0; i < 5; i++) {
+            Employee employee = new Employee();
+            employee.setName("Employee " + i);
+            employee.setSalary((long) i);
+            em.persist(employee);
+        }
+        clear();
+
+        print("same query different parameters");
+        TypedQuery<Employee> query = em.createQuery("SELECT e FROM Employee e WHERE e.salary >= :s ORDER BY e.salary", Employee.class);
+        List<Employee> employees = query.setParameter("s", 3L).getResultList();
+        Assert.assertEquals(2, employees.size());
+        Assert.assertEquals((Long) 3L, employees.get(0).getSalary());
+        query = em.createQuery("SELECT e FROM Employee e WHERE e.salary >= :s ORDER BY e.salary", Employee.class);
+        employees = query.setParameter("s", 1L).getResultList();
+        Assert.assertEquals(4, employees.size());
+        Assert.assertEquals((Long) 1L, employees.get(0).getSalary());
+
+        clear();
+
+        print("same query different values");
+        employees = em.createQuery("SELECT e FROM Employee e WHERE e.name IN ('Employee 0', 'Employee 1')", Employee.class)
+                .getResultList();
+        Assert.assertEquals(2, employees.size());
+        employees = em.createQuery("SELECT e FROM Employee e WHERE e.name IN ('Employee 4')", Employee.class)
+                .getResultList();
+        Assert.assertEquals(1, employees.size());
+        Assert.assertEquals("Employee 4", employees.get(0).getName());
+
+        clear();
+
+        print("different shapes");
+        employees = em.createQuery("SELECT e FROM Employee e WHERE e.salary >= :s ORDER BY e.salary DESC", Employee.class)
+                .setParameter("s", 1L)
+                .getResultList();
+        Assert.assertEquals(4, employees.size());
+        Assert.assertEquals((Long) 4L, employees.get(0).getSalary());
+        employees = em.createQuery("SELECT e.name FROM Employee e WHERE e.salary >= :s ORDER BY e.salary", Employee.class)
+                .setParameter("s", 1L)
+                .getResultList();
+        Assert.assertEquals(4, employees.size());
+        Assert.assertEquals("Employee 1", employees.get(0).getName());
+        Assert.assertNull(employees.get(0).getSalary());
+    }
+
+    @Test
+    public void testProjections() {
+        print("create");
+        for (int i = 0; i < 5; i++) {
+            Employee employee = new Employee();
+            employee.setName("Employee " + i);
+            employee.setSalary((long) i);
+            em.persist(employee);
+        }
+        clear();
+
+        print("project one attribute");
+        List<Employee> employees = em.createQuery("SELECT e.salary FROM Employee e WHERE e.salary >= :s ORDER BY e.salary", Employee.class)
+                .setParameter("s", 2L)
+                .getResultList();
+        Assert.assertEquals(3, employees.size());
+        long salary = 2;
+        for (Employee employee : employees) {
+            Assert.assertNotNull(employee.getId());
+            Assert.assertNull(employee.getName());
+            Assert.assertEquals((Long) salary++, employee.getSalary());
+        }
+
+        clear();
+
+        print("project many attributes");
+        employees = em.createQuery("SELECT e.name, e.salary FROM Employee e ORDER BY e.salary DESC", Employee.class)
+                .setMaxResults(2)
+                .getResultList();
+        Assert.assertEquals(2, employees.size());
+        Assert.assertEquals("Employee 4", employees.get(0).getName());
+        Assert.assertEquals((Long) 4L, employees.get(0).getSalary());
+        Assert.assertEquals("Employee 3", employees.get(1).getName());
+        Assert.assertEquals((Long) 3L, employees.get(1).getSalary());
+
+        print("projected entity is found by id");
+        Employee foundEmployee = em.find(Employee.class, employees.get(0).getId());
+        Assert.assertNotNull(foundEmployee);
+        Assert.assertEquals("Employee 4", foundEmployee.getName());
+    }
 }
@@ -1,5 +1,9 @@
 package it.polimi.kundera.client.datastore.tests;
 
+import com.google.appengine.api.datastore.EmbeddedEntity;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.KeyFactory;
 import it.polimi.kundera.client.datastore.entities.Address;
 import it.polimi.kundera.client.datastore.entities.EmployeeEmbedded;
 import org.junit.Assert;
@@ -54,4 +58,30 @@ public class EmbeddedTest extends TestBase {
         foundEmployee = em.find(EmployeeEmbedded.class, empId);
         Assert.assertNull(foundEmployee);
     }
+
+    @Test
+    public void testEmbeddedStorage() throws EntityNotFoundException {
+        print("create");
+        EmployeeEmbedded employee = new EmployeeEmbedded();
+        employee.setSalary(123L);
+        employee.setAddress(new Address("Via Cadore 12"));
+        em.persist(employee);
+        String empId = employee.getId();
+        clear();
+
+        print("check stored entity");
+        Entity gaeEntity = datastore.get(KeyFactory.createKey("EmployeeEmbedded", empId));
+        Assert.assertFalse(gaeEntity.hasProperty("EMPLOYEE_ID"));
+        Assert.assertFalse(gaeEntity.hasProperty("NAME"));
+        Assert.assertEquals(123L, gaeEntity.getProperty("SALARY"));
+        EmbeddedEntity embedded = (EmbeddedEntity) gaeEntity.getProperty("ADDRESS");
+        Assert.assertEquals("Via Cadore 12", embedded.getProperty("STREET"));
+
+        print("read");
+        EmployeeEmbedded foundEmployee = em.find(EmployeeEmbedded.class, empId);
+        Assert.assertNotNull(foundEmployee);
+        Assert.assertNull(foundEmployee.getName());
+        Assert.assertEquals((Long) 123L, foundEmployee.getSalary());
+        Assert.assertEquals("Via Cadore 12", foundEmployee.getAddress().getStreet());
+    }
 }
@@ -0,0 +1,78 @@
+package it.polimi.kundera.client.datastore.tests;
+
+import it.polimi.kundera.client.datastore.entities.Employee;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * @author Fabio Arcidiacono.
+ */
+public class FanOutQueryTest extends TestBase {
+
+    @Override
+    protected String getClientProperties() {
+        return "datastore-fanout-properties.xml";
+    }
+
+    @Test
+    public void testFanOut() {
+        print("create");
+        for (int i = 0; i < 15; i++) {
+            for (int j = 0; j < 2; j++) {
+                Employee employee = new Employee();
+                employee.setName("Employee " + i);
+                employee.setSalary((long) (i * 2 + j));
+                em.persist(employee);
+            }
+        }
+        clear();
+
+        print("in, more values than concurrent sub-queries");
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < 15; i++) {
+            names.append(i == 0 ? "(" : ", ").append("'Employee ").append(i).append("'");
+        }
+        names.append(")");
+        List<Employee> employees = em.createQuery("SELECT e FROM Employee e WHERE e.name IN " + names + " ORDER BY e.salary DESC", Employee.class)
+                .getResultList();
+        Assert.assertEquals(30, employees.size());
+        long salary = 29;
+        for (Employee employee : employees) {
+            Assert.assertEquals((Long) salary--, employee.getSalary());
+        }
+
+        print("limit");
+        employees = em.createQuery("SELECT e FROM Employee e WHERE e.name IN " + names + " ORDER BY e.salary", Employee.class)
+                .setMaxResults(5)
+                .getResultList();
+        Assert.assertEquals(5, employees.size());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals((Long) (long) i, employees.get(i).getSalary());
+        }
+
+        print("offset, left to datastore");
+        employees = em.createQuery("SELECT e FROM Employee e WHERE e.name IN " + names + " ORDER BY e.salary", Employee.class)
+                .setFirstResult(10)
+                .setMaxResults(5)
+                .getResultList();
+        Assert.assertEquals(5, employees.size());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals((Long) (long) (i + 10), employees.get(i).getSalary());
+        }
+
+        clear();
+
+        print("or, without duplicates");
+        employees = em.createQuery("SELECT e FROM Employee e WHERE e.name = :n OR e.salary >= :s ORDER BY e.salary", Employee.class)
+                .setParameter("n", "Employee 14")
+                .setParameter("s", 26L)
+                .getResultList();
+        Assert.assertEquals(4, employees.size());
+        salary = 26;
+        for (Employee employee : employees) {
+            Assert.assertEquals((Long) salary++, employee.getSalary());
+        }
+    }
+}
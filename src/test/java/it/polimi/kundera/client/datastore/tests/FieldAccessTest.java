@@ -0,0 +1,42 @@
+package it.polimi.kundera.client.datastore.tests;
+
+import it.polimi.kundera.client.datastore.entities.PhoneImmutable;
+import it.polimi.kundera.client.datastore.entities.PhoneType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * @author Fabio Arcidiacono.
+ */
+public class FieldAccessTest extends TestBase {
+
+    @Test
+    public void testWithoutSetters() {
+        print("create");
+        PhoneImmutable phone = new PhoneImmutable("phone 1", 123456789L, PhoneType.HOME);
+        em.persist(phone);
+        clear();
+
+        print("read");
+        PhoneImmutable foundPhone = em.find(PhoneImmutable.class, "phone 1");
+        Assert.assertNotNull(foundPhone);
+        Assert.assertEquals("phone 1", foundPhone.getId());
+        Assert.assertEquals((Long) 123456789L, foundPhone.getNumber());
+        Assert.assertEquals(PhoneType.HOME, foundPhone.getType());
+
+        clear();
+
+        print("query");
+        List<PhoneImmutable> phones = em.createQuery("SELECT p FROM PhoneImmutable p WHERE p.number = :n", PhoneImmutable.class)
+                .setParameter("n", 123456789L)
+                .getResultList();
+        Assert.assertEquals(1, phones.size());
+        Assert.assertEquals(PhoneType.HOME, phones.get(0).getType());
+
+        print("delete");
+        em.remove(phones.get(0));
+        Assert.assertNull(em.find(PhoneImmutable.class, "phone 1"));
+    }
+}
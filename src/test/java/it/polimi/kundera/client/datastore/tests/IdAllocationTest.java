@@ -0,0 +1,62 @@
+package it.polimi.kundera.client.datastore.tests;
+
+import it.polimi.kundera.client.datastore.entities.Phone;
+import it.polimi.kundera.client.datastore.entities.PhoneLong;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @author Fabio Arcidiacono.
+ */
+public class IdAllocationTest extends TestBase {
+
+    @Override
+    protected String getClientProperties() {
+        return "datastore-allocation-properties.xml";
+    }
+
+    @Test
+    public void testGeneratedIds() {
+        print("create");
+        Set<String> ids = new HashSet<>();
+        /* more than an allocation range */
+        for (int i = 0; i < 25; i++) {
+            Phone phone = new Phone();
+            phone.setNumber((long) i);
+            em.persist(phone);
+            Assert.assertTrue(phone.getId().matches("\\d+"));
+            ids.add(phone.getId());
+        }
+        Assert.assertEquals(25, ids.size());
+        clear();
+
+        print("read");
+        for (String id : ids) {
+            Assert.assertNotNull(em.find(Phone.class, id));
+        }
+    }
+
+    @Test
+    public void testAllocateId() {
+        print("allocate");
+        Object id = getClient().allocateId(PhoneLong.class);
+        Assert.assertTrue(id instanceof Long);
+        Assert.assertNotEquals(id, getClient().allocateId(PhoneLong.class));
+        Assert.assertTrue(getClient().allocateId(Phone.class) instanceof String);
+
+        print("create");
+        PhoneLong phone = new PhoneLong();
+        phone.setId((Long) id);
+        phone.setNumber(123456789L);
+        em.persist(phone);
+        clear();
+
+        print("read");
+        PhoneLong foundPhone = em.find(PhoneLong.class, id);
+        Assert.assertNotNull(foundPhone);
+        Assert.assertEquals((Long) 123456789L, foundPhone.getNumber());
+    }
+}
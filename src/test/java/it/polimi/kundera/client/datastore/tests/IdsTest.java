@@ -1,11 +1,14 @@
 package it.polimi.kundera.client.datastore.tests;
 
 import com.impetus.kundera.KunderaException;
+import com.impetus.kundera.client.EnhanceEntity;
 import it.polimi.kundera.client.datastore.entities.*;
 import org.junit.Assert;
 import org.junit.Test;
 
 import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author Fabio Arcidiacono.
@@ -144,4 +147,29 @@ public class IdsTest extends TestBase {
         print("cleanup");
         em.remove(phone);
     }
+
+    @Test
+    public void findAllTest() {
+        print("create");
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Phone phone = new Phone();
+            phone.setNumber((long) i);
+            em.persist(phone);
+            ids.add(phone.getId());
+        }
+        clear();
+
+        print("find all");
+        /* requested order is kept, missing ids are skipped */
+        List<?> results = getClient().findAll(Phone.class, null,
+                ids.get(3), "missing", ids.get(0), ids.get(4), ids.get(1), ids.get(2));
+        Assert.assertEquals(5, results.size());
+        long[] expected = {3L, 0L, 4L, 1L, 2L};
+        for (int i = 0; i < expected.length; i++) {
+            Object result = results.get(i);
+            Phone phone = (Phone) (result instanceof EnhanceEntity ? ((EnhanceEntity) result).getEntity() : result);
+            Assert.assertEquals((Long) expected[i], phone.getNumber());
+        }
+    }
 }
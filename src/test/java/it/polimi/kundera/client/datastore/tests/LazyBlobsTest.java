@@ -0,0 +1,63 @@
+package it.polimi.kundera.client.datastore.tests;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.KeyFactory;
+import it.polimi.kundera.client.datastore.entities.AddressCollection;
+import it.polimi.kundera.client.datastore.serializer.LazyValue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Runs {@link ElementCollectionTest} deserializing collections on first access.
+ *
+ * @author Fabio Arcidiacono.
+ */
+public class LazyBlobsTest extends ElementCollectionTest {
+
+    @Override
+    protected String getClientProperties() {
+        return "datastore-lazy-properties.xml";
+    }
+
+    @Test
+    public void testLazyBlobs() throws IOException, EntityNotFoundException {
+        print("create with java serialization");
+        /* blob not written by the client serializer, so rewriting it would change its bytes */
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(new ArrayList<>(Arrays.asList("Street 1", "Street 2")));
+        out.close();
+        Blob blob = new Blob(bytes.toByteArray());
+        Entity gaeEntity = new Entity("AddressCollection", "address 1");
+        gaeEntity.setProperty("CITY", "Milano");
+        gaeEntity.setUnindexedProperty("streets", blob);
+        datastore.put(gaeEntity);
+
+        print("read");
+        AddressCollection foundAddress = em.find(AddressCollection.class, "address 1");
+        Assert.assertNotNull(foundAddress);
+        Assert.assertTrue(foundAddress.getStreets() instanceof LazyValue);
+        Assert.assertFalse(((LazyValue) foundAddress.getStreets()).isLoaded());
+
+        print("update without accessing streets");
+        foundAddress.setCity("Roma");
+        em.merge(foundAddress);
+        clear();
+        gaeEntity = datastore.get(KeyFactory.createKey("AddressCollection", "address 1"));
+        Assert.assertEquals("Roma", gaeEntity.getProperty("CITY"));
+        Assert.assertEquals(blob, gaeEntity.getProperty("streets"));
+
+        print("access streets");
+        foundAddress = em.find(AddressCollection.class, "address 1");
+        Assert.assertEquals(Arrays.asList("Street 1", "Street 2"), foundAddress.getStreets());
+        Assert.assertTrue(((LazyValue) foundAddress.getStreets()).isLoaded());
+    }
+}
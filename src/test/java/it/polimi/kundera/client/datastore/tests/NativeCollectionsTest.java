@@ -0,0 +1,58 @@
+package it.polimi.kundera.client.datastore.tests;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.KeyFactory;
+import it.polimi.kundera.client.datastore.entities.AddressCollection;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Runs {@link ElementCollectionTest} storing collections as list properties.
+ *
+ * @author Fabio Arcidiacono.
+ */
+public class NativeCollectionsTest extends ElementCollectionTest {
+
+    @Override
+    protected String getClientProperties() {
+        return "datastore-native-properties.xml";
+    }
+
+    @Test
+    public void testNativeStorage() throws EntityNotFoundException {
+        print("create");
+        AddressCollection address = new AddressCollection();
+        address.setStreets("Street 1", "Street 2", "Street 3");
+        em.persist(address);
+        String adrId = address.getId();
+
+        print("check stored entity");
+        Entity gaeEntity = datastore.get(KeyFactory.createKey("AddressCollection", adrId));
+        Assert.assertEquals(Arrays.asList("Street 1", "Street 2", "Street 3"), gaeEntity.getProperty("streets"));
+        Assert.assertFalse(gaeEntity.isUnindexedProperty("streets"));
+    }
+
+    @Test
+    public void testLongStringsAreSerialized() throws EntityNotFoundException {
+        print("create");
+        /* longer than the 500 characters of a string property */
+        String longStreet = new String(new char[501]).replace('\0', 'a');
+        AddressCollection address = new AddressCollection();
+        address.setStreets("Street 1", longStreet);
+        em.persist(address);
+        String adrId = address.getId();
+        clear();
+
+        print("check stored entity");
+        Entity gaeEntity = datastore.get(KeyFactory.createKey("AddressCollection", adrId));
+        Assert.assertTrue(gaeEntity.getProperty("streets") instanceof Blob);
+
+        print("read");
+        AddressCollection foundAddress = em.find(AddressCollection.class, adrId);
+        Assert.assertEquals(Arrays.asList("Street 1", longStreet), foundAddress.getStreets());
+    }
+}
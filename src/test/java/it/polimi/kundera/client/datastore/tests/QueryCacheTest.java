@@ -0,0 +1,73 @@
+package it.polimi.kundera.client.datastore.tests;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.KeyFactory;
+import it.polimi.kundera.client.datastore.entities.Phone;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Fabio Arcidiacono.
+ */
+public class QueryCacheTest extends TestBase {
+
+    @Override
+    protected String getClientProperties() {
+        return "datastore-query-cache-properties.xml";
+    }
+
+    @Test
+    public void testQueryCache() {
+        print("create");
+        List<String> ids = new ArrayList<>();
+        for (long i = 1; i <= 3; i++) {
+            Phone phone = new Phone();
+            phone.setNumber(i);
+            em.persist(phone);
+            ids.add(phone.getId());
+        }
+        clear();
+
+        print("query");
+        Assert.assertEquals(2, findFrom(2L).size());
+        clear();
+
+        print("create by another client");
+        Entity gaeEntity = new Entity("Phone", "other");
+        gaeEntity.setProperty("NUMBER", 5L);
+        datastore.put(gaeEntity);
+
+        print("query from cache");
+        Assert.assertEquals(2, findFrom(2L).size());
+        clear();
+
+        print("delete by another client");
+        datastore.delete(KeyFactory.createKey("Phone", ids.get(2)));
+
+        print("deleted results are skipped");
+        List<Phone> phones = findFrom(2L);
+        Assert.assertEquals(1, phones.size());
+        Assert.assertEquals(ids.get(1), phones.get(0).getId());
+        clear();
+
+        print("create invalidates");
+        Phone phone = new Phone();
+        phone.setNumber(4L);
+        em.persist(phone);
+        clear();
+        phones = findFrom(2L);
+        Assert.assertEquals(3, phones.size());
+        for (Phone p : phones) {
+            Assert.assertTrue(p.getNumber() >= 2L);
+        }
+    }
+
+    private List<Phone> findFrom(Long number) {
+        return em.createQuery("SELECT p FROM Phone p WHERE p.number >= :n", Phone.class)
+                .setParameter("n", number)
+                .getResultList();
+    }
+}
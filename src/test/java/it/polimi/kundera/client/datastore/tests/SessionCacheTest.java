@@ -0,0 +1,71 @@
+package it.polimi.kundera.client.datastore.tests;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.KeyFactory;
+import it.polimi.kundera.client.datastore.entities.Phone;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Fabio Arcidiacono.
+ */
+public class SessionCacheTest extends TestBase {
+
+    @Override
+    protected String getClientProperties() {
+        return "datastore-session-properties.xml";
+    }
+
+    @Test
+    public void testSessionCache() throws EntityNotFoundException {
+        print("create");
+        Phone phone = new Phone();
+        phone.setNumber(123456789L);
+        em.persist(phone);
+        String phnId = phone.getId();
+        clear();
+
+        print("read");
+        Phone foundPhone = em.find(Phone.class, phnId);
+        Assert.assertEquals((Long) 123456789L, foundPhone.getNumber());
+        clear();
+
+        print("update by another client");
+        Entity gaeEntity = datastore.get(KeyFactory.createKey("Phone", phnId));
+        gaeEntity.setProperty("NUMBER", 111111111L);
+        datastore.put(gaeEntity);
+
+        print("read from session");
+        foundPhone = em.find(Phone.class, phnId);
+        Assert.assertEquals((Long) 123456789L, foundPhone.getNumber());
+
+        print("update evicts");
+        foundPhone.setNumber(987654321L);
+        em.merge(foundPhone);
+        clear();
+        foundPhone = em.find(Phone.class, phnId);
+        Assert.assertEquals((Long) 987654321L, foundPhone.getNumber());
+    }
+
+    @Test
+    public void testMissingEntity() {
+        print("read missing");
+        Assert.assertNull(em.find(Phone.class, "missing"));
+
+        print("create by another client");
+        Entity gaeEntity = new Entity("Phone", "missing");
+        gaeEntity.setProperty("NUMBER", 123456789L);
+        datastore.put(gaeEntity);
+
+        print("still missing in session");
+        Assert.assertNull(em.find(Phone.class, "missing"));
+
+        print("new entity manager");
+        em.close();
+        em = emf.createEntityManager();
+        Phone foundPhone = em.find(Phone.class, "missing");
+        Assert.assertNotNull(foundPhone);
+        Assert.assertEquals((Long) 123456789L, foundPhone.getNumber());
+    }
+}
@@ -1,7 +1,14 @@
 package it.polimi.kundera.client.datastore.tests;
 
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.impetus.kundera.PersistenceProperties;
+import com.impetus.kundera.client.Client;
+import it.polimi.kundera.client.datastore.DatastoreClient;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.After;
 import org.junit.Before;
@@ -11,6 +18,8 @@ import org.junit.rules.ExpectedException;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author Fabio Arcidiacono.
@@ -24,16 +33,27 @@ public abstract class TestBase {
 
     /** JPA stuff */
     private static final String PERSISTENCE_UNIT = "pu";
-    private EntityManagerFactory emf;
+    protected EntityManagerFactory emf;
     protected EntityManager em;
 
+    /** raw datastore, to check how entities are stored */
+    protected DatastoreService datastore;
+
     @Rule
     public ExpectedException thrown = ExpectedException.none();
 
     @Before
     public void setUp() {
         helper.setUp();
-        emf = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT);
+        datastore = DatastoreServiceFactory.getDatastoreService();
+        Map<String, Object> properties = new HashMap<>();
+        if (getClientProperties() != null) {
+            properties.put(PersistenceProperties.KUNDERA_CLIENT_PROPERTY, getClientProperties());
+        }
+        if (getBatchSize() > 0) {
+            properties.put(PersistenceProperties.KUNDERA_BATCH_SIZE, String.valueOf(getBatchSize()));
+        }
+        emf = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT, properties);
         if (em != null && em.isOpen()) {
             em.close();
         }
@@ -51,6 +71,31 @@ public abstract class TestBase {
         helper.tearDown();
     }
 
+    /**
+     * @return datastore specific property file used in place of the one
+     * declared in persistence.xml, {@code null} to use that one.
+     */
+    protected String getClientProperties() {
+        return null;
+    }
+
+    /**
+     * @return value of kundera.batch.size, zero to not set it.
+     */
+    protected int getBatchSize() {
+        return 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected DatastoreClient getClient() {
+        Map<String, Client> clients = (Map<String, Client>) em.getDelegate();
+        return (DatastoreClient) clients.get(PERSISTENCE_UNIT);
+    }
+
+    protected int count(String kind) {
+        return datastore.prepare(new Query(kind)).countEntities(FetchOptions.Builder.withDefaults());
+    }
+
     /*---------------------------------------------------------------------------------*/
     /*-------------------------- UTILS, for debug purposes ----------------------------*/
 
@@ -0,0 +1,50 @@
+package it.polimi.kundera.client.datastore.tests;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.KeyFactory;
+import it.polimi.kundera.client.datastore.entities.EmployeeUnindexed;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * @author Fabio Arcidiacono.
+ */
+public class UnindexedTest extends TestBase {
+
+    @Test
+    public void testUnindexed() throws EntityNotFoundException {
+        print("create");
+        EmployeeUnindexed employee = new EmployeeUnindexed();
+        employee.setName("Fabio");
+        employee.setNotes("some notes");
+        em.persist(employee);
+        String empId = employee.getId();
+        clear();
+
+        print("check stored entity");
+        Entity gaeEntity = datastore.get(KeyFactory.createKey("EmployeeUnindexed", empId));
+        Assert.assertFalse(gaeEntity.isUnindexedProperty("NAME"));
+        Assert.assertTrue(gaeEntity.isUnindexedProperty("NOTES"));
+
+        print("read");
+        EmployeeUnindexed foundEmployee = em.find(EmployeeUnindexed.class, empId);
+        Assert.assertEquals("Fabio", foundEmployee.getName());
+        Assert.assertEquals("some notes", foundEmployee.getNotes());
+
+        clear();
+
+        print("query");
+        List<EmployeeUnindexed> employees = em.createQuery("SELECT e FROM EmployeeUnindexed e WHERE e.name = :n", EmployeeUnindexed.class)
+                .setParameter("n", "Fabio")
+                .getResultList();
+        Assert.assertEquals(1, employees.size());
+        /* unindexed properties cannot be used in filters */
+        employees = em.createQuery("SELECT e FROM EmployeeUnindexed e WHERE e.notes = :n", EmployeeUnindexed.class)
+                .setParameter("n", "some notes")
+                .getResultList();
+        Assert.assertTrue(employees.isEmpty());
+    }
+}